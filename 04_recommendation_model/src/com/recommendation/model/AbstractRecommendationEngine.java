@@ -1,7 +1,10 @@
 package com.recommendation.model;
 
 import com.recommendation.preprocessing.Product;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Abstract class defining the core structure of a Recommendation Engine.
@@ -31,6 +34,38 @@ public abstract class AbstractRecommendationEngine {
             String category,
             int maxResults);
 
+    /**
+     * Get recommendations for many queries at once (offline jobs).
+     * Identical queries are computed once; each gets its own copy of the
+     * results.
+     *
+     * @return One result list per query, in the order of the input.
+     */
+    public List<List<RecommendationResult>> getRecommendationsBatch(List<Query> queries) {
+        Map<Query, List<RecommendationResult>> distinct = new HashMap<>();
+        List<List<RecommendationResult>> results = new ArrayList<>(queries.size());
+        for (Query q : queries) {
+            List<RecommendationResult> computed = distinct.get(q);
+            if (computed == null) {
+                computed = getRecommendations(q.getText(), q.getMinPrice(), q.getMaxPrice(), q.getCategory(),
+                        q.getMaxResults());
+                distinct.put(q, computed);
+                results.add(computed);
+            } else {
+                results.add(copyOf(computed));
+            }
+        }
+        return results;
+    }
+
+    protected static List<RecommendationResult> copyOf(List<RecommendationResult> results) {
+        List<RecommendationResult> copy = new ArrayList<>(results.size());
+        for (RecommendationResult r : results) {
+            copy.add(new RecommendationResult(r));
+        }
+        return copy;
+    }
+
     public boolean isModelReady() {
         return modelReady;
     }
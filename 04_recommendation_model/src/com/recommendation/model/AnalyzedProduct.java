@@ -0,0 +1,36 @@
+package com.recommendation.model;
+
+/**
+ * Query-ready form of a product's text, computed once at training time so the
+ * scoring loop does no string building or regex work per product.
+ */
+public class AnalyzedProduct {
+
+    private final String normalizedTitle; // Lowercase, alphanumerics and spaces only
+    private final String normalizedCategory;
+    private final int[] termIds; // TF-IDF vocabulary ids in document order (-1 = unknown)
+    private final int titleTermCount; // The first titleTermCount term ids come from the title
+
+    public AnalyzedProduct(String normalizedTitle, String normalizedCategory, int[] termIds, int titleTermCount) {
+        this.normalizedTitle = normalizedTitle;
+        this.normalizedCategory = normalizedCategory;
+        this.termIds = termIds;
+        this.titleTermCount = titleTermCount;
+    }
+
+    public String getNormalizedTitle() {
+        return normalizedTitle;
+    }
+
+    public String getNormalizedCategory() {
+        return normalizedCategory;
+    }
+
+    public int[] getTermIds() {
+        return termIds;
+    }
+
+    public int getTitleTermCount() {
+        return titleTermCount;
+    }
+}
@@ -0,0 +1,201 @@
+package com.recommendation.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tokenizer shared by TF-IDF, the sentiment classifier and the keyword index,
+ * so they all see the same tokens.
+ *
+ * Text is scanned char by char: letters are lowercased and their accents
+ * folded (é -> e, œ -> oe), anything but letters and digits separates tokens,
+ * and tokens of 2 chars or fewer and French stop words are dropped (the
+ * sentiment classifier keeps stop words). Each token is folded into a
+ * reusable buffer and looked up from there, and term ids go to a reusable int
+ * buffer, so analyzing allocates nothing per token.
+ *
+ * An analyzer is not thread-safe; {@link #get()} returns the calling
+ * thread's own.
+ */
+public final class Analyzer {
+
+    private static final int MIN_TOKEN_LENGTH = 3;
+
+    // Common French stop words, folded (shorter ones are dropped by length anyway)
+    private static final TermDictionary STOP_WORDS = new TermDictionary(Arrays.asList(
+            "les", "une", "des", "cet", "cette", "mais", "donc", "car", "pour", "par", "sur", "sous",
+            "avec", "sans", "dans", "aux", "est", "sont", "ils", "elle", "elles", "que", "qui", "quoi",
+            "dont", "plus", "moins", "tres", "bien", "bon", "pas", "son", "ses", "leur", "leurs"));
+
+    // Folded form of each char below 0x180: a lowercase ASCII letter or digit, 0 for a separator.
+    // Ligatures fold to two letters, the second in FOLD_SECOND.
+    private static final char[] FOLD = new char[0x180];
+    private static final char[] FOLD_SECOND = new char[0x180];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            FOLD[c] = c;
+            FOLD[Character.toUpperCase(c)] = c;
+        }
+        for (char c = '0'; c <= '9'; c++)
+            FOLD[c] = c;
+        String accented = "àáâãäåçèéêëìíîïñòóôõöùúûüýÿ";
+        String plain = "aaaaaaceeeeiiiinooooouuuuyy";
+        for (int k = 0; k < accented.length(); k++) {
+            FOLD[accented.charAt(k)] = plain.charAt(k);
+            FOLD[Character.toUpperCase(accented.charAt(k))] = plain.charAt(k);
+        }
+        String ligatures = "æÆœŒß";
+        String[] expansions = { "ae", "ae", "oe", "oe", "ss" };
+        for (int k = 0; k < ligatures.length(); k++) {
+            FOLD[ligatures.charAt(k)] = expansions[k].charAt(0);
+            FOLD_SECOND[ligatures.charAt(k)] = expansions[k].charAt(1);
+        }
+    }
+
+    private static final ThreadLocal<Analyzer> PER_THREAD = ThreadLocal.withInitial(Analyzer::new);
+
+    private final StringBuilder token = new StringBuilder(32); // Folded chars of the current token
+    private int[] ids = new int[64]; // Term ids of the last analyzed text
+    private CharSequence text = "";
+    private int position;
+
+    private Analyzer() {
+    }
+
+    /**
+     * The calling thread's analyzer.
+     */
+    public static Analyzer get() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Look the tokens of a text up, in text order, into the buffer returned
+     * by {@link #ids()}.
+     *
+     * @param hashBits   Hash tokens instead of looking them up (the
+     *                   dictionary is not used), see TFIDFVectorizer.featureId.
+     * @param addUnknown Append unknown tokens to the dictionary instead of
+     *                   mapping them to -1.
+     * @return Number of ids.
+     */
+    public int analyze(CharSequence text, TermDictionary dictionary, int hashBits, boolean addUnknown) {
+        return analyze(text, dictionary, hashBits, addUnknown, false);
+    }
+
+    /**
+     * @param keepStopWords Keep stop words. For the sentiment classifier:
+     *                      "bon", "pas", "tres" carry polarity and negation,
+     *                      which only the relevance side can do without.
+     */
+    public int analyze(CharSequence text, TermDictionary dictionary, int hashBits, boolean addUnknown,
+            boolean keepStopWords) {
+        reset(text);
+        int count = 0;
+        while (next(keepStopWords)) {
+            int id = hashBits > 0 ? TFIDFVectorizer.featureId(token, 0, token.length(), hashBits)
+                    : dictionary.get(token);
+            if (id < 0 && addUnknown)
+                id = dictionary.add(token);
+            if (count == ids.length)
+                ids = Arrays.copyOf(ids, count * 2);
+            ids[count++] = id;
+        }
+        reset(null); // Don't keep the text reachable
+        return count;
+    }
+
+    /**
+     * Term ids written by the last {@link #analyze} call on this analyzer
+     * (overwritten by the next one).
+     */
+    public int[] ids() {
+        return ids;
+    }
+
+    /**
+     * Copy of the term ids of a text, see {@link #analyze}.
+     */
+    public int[] termIds(CharSequence text, TermDictionary dictionary, int hashBits, boolean addUnknown) {
+        return Arrays.copyOf(ids, analyze(text, dictionary, hashBits, addUnknown));
+    }
+
+    /**
+     * Tokens of a text as strings, for callers that keep them.
+     */
+    public List<String> tokens(CharSequence text) {
+        List<String> tokens = new ArrayList<>();
+        reset(text);
+        while (next(false))
+            tokens.add(token.toString());
+        reset(null);
+        return tokens;
+    }
+
+    /**
+     * Number of tokens of a text.
+     */
+    public int count(CharSequence text) {
+        reset(text);
+        int count = 0;
+        while (next(false))
+            count++;
+        reset(null);
+        return count;
+    }
+
+    /**
+     * Text folded like tokens but with nothing dropped: letters and digits
+     * folded, whitespace runs turned into single spaces, other chars removed.
+     * Used for substring matching of whole titles and categories.
+     */
+    public static String normalize(CharSequence text) {
+        if (text == null)
+            return "";
+        StringBuilder normalized = new StringBuilder(text.length());
+        boolean space = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = normalized.length() > 0;
+            } else if (c < FOLD.length && FOLD[c] != 0) {
+                if (space)
+                    normalized.append(' ');
+                space = false;
+                appendFolded(normalized, c);
+            }
+        }
+        return normalized.toString();
+    }
+
+    private void reset(CharSequence text) {
+        this.text = text == null ? "" : text;
+        this.position = 0;
+    }
+
+    // Fold the next kept token into the token buffer; false at the end of the text
+    private boolean next(boolean keepStopWords) {
+        int length = text.length();
+        while (position < length) {
+            token.setLength(0);
+            for (; position < length; position++) {
+                char c = text.charAt(position);
+                if (c < FOLD.length && FOLD[c] != 0)
+                    appendFolded(token, c);
+                else if (token.length() > 0)
+                    break;
+            }
+            if (token.length() >= MIN_TOKEN_LENGTH && (keepStopWords || STOP_WORDS.get(token) < 0))
+                return true;
+        }
+        return false;
+    }
+
+    private static void appendFolded(StringBuilder out, char c) {
+        out.append(FOLD[c]);
+        if (FOLD_SECOND[c] != 0)
+            out.append(FOLD_SECOND[c]);
+    }
+}
@@ -0,0 +1,259 @@
+package com.recommendation.model;
+
+import com.recommendation.preprocessing.Product;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Typeahead over product titles: the titles with a word starting with a
+ * prefix ("galaxy s2" completes "Samsung Galaxy S23 128 Go"), most reviewed
+ * first.
+ *
+ * Keys are the normalized titles (see Analyzer.normalize) from each word
+ * start, cut at MAX_KEY_LENGTH chars, sorted and front-coded as ASCII bytes:
+ * in each block of BLOCK keys the first is stored whole and the others as the
+ * length shared with the previous key plus the rest. A prefix is located by
+ * binary search over the block heads and a short scan in one block; its
+ * completions are then a contiguous key range. Longer prefixes are matched on
+ * their first MAX_KEY_LENGTH chars and checked against the titles.
+ *
+ * Each block also records the best weight among its keys' titles, so once
+ * enough completions are found, a wide range skips the blocks that cannot
+ * beat them instead of visiting every key.
+ */
+public final class AutocompleteIndex {
+
+    private static final int BLOCK = 16; // Keys per front-coded block
+    private static final int MAX_KEY_LENGTH = 24; // Longer keys (and prefixes) are cut
+
+    private final String[] titles; // Display title per title id, distinct by normalized form
+    private final double[] weights; // Per title id: review count, ties broken by rating
+    private final byte[] keyData; // Front-coded keys (normalized text is ASCII), lengths stored as bytes
+    private final int[] blockStarts; // Offset in keyData of each block's first key
+    private final int[] keyTitles; // Title id of each key, in key order
+    private final double[] blockMaxWeights; // Best title weight of each block's keys
+
+    /**
+     * @param titles  Product titles.
+     * @param weights Rank of each title among completions (higher first).
+     */
+    public AutocompleteIndex(List<String> titles, double[] weights) {
+        // 1. Distinct titles by normalized form, keeping the best weight
+        Map<String, Integer> ids = new HashMap<>();
+        List<String> normalizedTitles = new ArrayList<>();
+        List<String> displayTitles = new ArrayList<>();
+        double[] bestWeights = new double[titles.size()];
+        for (int i = 0; i < titles.size(); i++) {
+            String normalized = Analyzer.normalize(titles.get(i));
+            if (normalized.isEmpty())
+                continue;
+            Integer id = ids.get(normalized);
+            if (id == null) {
+                id = normalizedTitles.size();
+                ids.put(normalized, id);
+                normalizedTitles.add(normalized);
+                displayTitles.add(titles.get(i).trim());
+                bestWeights[id] = weights[i];
+            } else {
+                bestWeights[id] = Math.max(bestWeights[id], weights[i]);
+            }
+        }
+        this.titles = displayTitles.toArray(new String[0]);
+        this.weights = Arrays.copyOf(bestWeights, this.titles.length);
+
+        // 2. One key per word start of each title, sorted (ties by title id)
+        List<String> keyList = new ArrayList<>();
+        List<Integer> ownerList = new ArrayList<>();
+        for (int id = 0; id < normalizedTitles.size(); id++) {
+            String title = normalizedTitles.get(id);
+            for (int start = 0; start >= 0; start = nextWord(title, start)) {
+                keyList.add(title.substring(start, Math.min(title.length(), start + MAX_KEY_LENGTH)));
+                ownerList.add(id);
+            }
+        }
+        String[] keys = keyList.toArray(new String[0]);
+        Integer[] order = new Integer[keys.length];
+        for (int k = 0; k < order.length; k++)
+            order[k] = k;
+        Arrays.sort(order, (a, b) -> {
+            int cmp = keys[a].compareTo(keys[b]);
+            return cmp != 0 ? cmp : Integer.compare(a, b); // Keys were added in title id order
+        });
+
+        // 3. Front coding
+        this.keyTitles = new int[order.length];
+        this.blockStarts = new int[(order.length + BLOCK - 1) / BLOCK];
+        this.blockMaxWeights = new double[blockStarts.length];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        String previous = "";
+        for (int k = 0; k < order.length; k++) {
+            String key = keys[order[k]];
+            keyTitles[k] = ownerList.get(order[k]);
+            int shared = 0;
+            if (k % BLOCK == 0) {
+                blockStarts[k / BLOCK] = bytes.size();
+                blockMaxWeights[k / BLOCK] = this.weights[keyTitles[k]];
+            } else {
+                blockMaxWeights[k / BLOCK] = Math.max(blockMaxWeights[k / BLOCK], this.weights[keyTitles[k]]);
+                shared = sharedLength(previous, key);
+                bytes.write(shared);
+            }
+            bytes.write(key.length() - shared);
+            for (int i = shared; i < key.length(); i++)
+                bytes.write(key.charAt(i));
+            previous = key;
+        }
+        this.keyData = bytes.toByteArray();
+    }
+
+    /**
+     * Index the titles of a catalogue, weighted by review count (ties broken
+     * by rating).
+     */
+    public static AutocompleteIndex of(List<Product> products) {
+        List<String> titles = new ArrayList<>(products.size());
+        double[] weights = new double[products.size()];
+        for (int i = 0; i < products.size(); i++) {
+            Product p = products.get(i);
+            titles.add(p.getTitle() == null ? "" : p.getTitle());
+            weights[i] = p.getReviewCount() + p.getAvgRating() / 10.0; // Rating is at most 5
+        }
+        return new AutocompleteIndex(titles, weights);
+    }
+
+    /**
+     * Titles with a word starting with the prefix (folded like Analyzer
+     * tokens), best weight first, ties in catalogue order.
+     */
+    public List<String> complete(String prefix, int limit) {
+        List<String> completions = new ArrayList<>();
+        String normalized = Analyzer.normalize(prefix);
+        if (normalized.isEmpty() || limit <= 0 || keyTitles.length == 0)
+            return completions;
+        int length = Math.min(normalized.length(), MAX_KEY_LENGTH);
+        byte[] target = new byte[length + 1];
+        for (int i = 0; i < length; i++)
+            target[i] = (byte) normalized.charAt(i);
+
+        // 1. Keys starting with the prefix: from the first key >= prefix to the
+        // first key >= prefix followed by a byte above any key char
+        byte[] scratch = new byte[MAX_KEY_LENGTH];
+        int from = lowerBound(target, length, scratch);
+        target[length] = Byte.MAX_VALUE;
+        int to = lowerBound(target, length + 1, scratch);
+
+        // 2. Best titles of the range (a title can own several keys of it). Once
+        // limit titles are kept, a block whose best weight is below the worst
+        // kept cannot add any, so it is skipped.
+        boolean cut = normalized.length() > MAX_KEY_LENGTH;
+        TopKHeap best = new TopKHeap(limit);
+        BitSet seen = new BitSet(titles.length);
+        for (int block = from / BLOCK; block * BLOCK < to; block++) {
+            if (best.isFull() && blockMaxWeights[block] < best.minScore())
+                continue;
+            int end = Math.min(to, (block + 1) * BLOCK);
+            for (int k = Math.max(from, block * BLOCK); k < end; k++) {
+                int id = keyTitles[k];
+                if (!seen.get(id)) {
+                    seen.set(id);
+                    if (!cut || hasWordStartingWith(Analyzer.normalize(titles[id]), normalized))
+                        best.offer(id, weights[id]);
+                }
+            }
+        }
+        for (int id : best.drainOrdinals(new double[best.size()]))
+            completions.add(titles[id]);
+        return completions;
+    }
+
+    /** Number of distinct titles. */
+    public int size() {
+        return titles.length;
+    }
+
+    /** Number of keys (word starts). */
+    public int keyCount() {
+        return keyTitles.length;
+    }
+
+    /**
+     * Bytes held by the key structure (front-coded keys and their title ids).
+     */
+    public long keyBytes() {
+        return keyData.length + 4L * blockStarts.length + 4L * keyTitles.length;
+    }
+
+    // Position of the first key >= target[0, length)
+    private int lowerBound(byte[] target, int length, byte[] scratch) {
+        // Last block whose first key is < target
+        int lo = 0, hi = blockStarts.length - 1, block = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int offset = blockStarts[mid];
+            int keyLength = keyData[offset];
+            if (compare(keyData, offset + 1, keyLength, target, length) < 0) {
+                block = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        if (block < 0)
+            return 0;
+
+        // Decode the block until a key >= target
+        int first = block * BLOCK;
+        int last = Math.min(keyTitles.length, first + BLOCK);
+        int offset = blockStarts[block];
+        int keyLength = keyData[offset++];
+        System.arraycopy(keyData, offset, scratch, 0, keyLength);
+        offset += keyLength;
+        for (int k = first + 1; k < last; k++) {
+            int shared = keyData[offset++];
+            int rest = keyData[offset++];
+            System.arraycopy(keyData, offset, scratch, shared, rest);
+            offset += rest;
+            keyLength = shared + rest;
+            if (compare(scratch, 0, keyLength, target, length) >= 0)
+                return k;
+        }
+        return last;
+    }
+
+    private static int compare(byte[] a, int from, int aLength, byte[] b, int bLength) {
+        int n = Math.min(aLength, bLength);
+        for (int i = 0; i < n; i++) {
+            int cmp = Byte.compare(a[from + i], b[i]);
+            if (cmp != 0)
+                return cmp;
+        }
+        return Integer.compare(aLength, bLength);
+    }
+
+    // Start of the word after the one at start, or -1
+    private static int nextWord(String title, int start) {
+        int space = title.indexOf(' ', start);
+        return space < 0 ? -1 : space + 1;
+    }
+
+    private static boolean hasWordStartingWith(String title, String prefix) {
+        for (int start = 0; start >= 0; start = nextWord(title, start)) {
+            if (title.startsWith(prefix, start))
+                return true;
+        }
+        return false;
+    }
+
+    private static int sharedLength(String a, String b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i))
+            i++;
+        return i;
+    }
+}
@@ -0,0 +1,136 @@
+package com.recommendation.model;
+
+import java.util.Arrays;
+
+/**
+ * BM25F over two fields, title and description.
+ *
+ * Per (term, product), the field term frequencies are normalized by field
+ * length and combined with the field boosts into one pseudo frequency tf,
+ * which saturates: impact = idf * tf / (K1 + tf). Impacts are computed once
+ * when the scorer is built, so a query only sums the impacts of its terms'
+ * postings. The sum is divided by the sum of the query terms' idf (the
+ * score of an ideal product), which keeps similarities in [0, 1); only the
+ * products in those postings are touched.
+ *
+ * Document frequencies are counted from the products themselves, so the
+ * weights stay consistent between TF-IDF reweights.
+ */
+final class Bm25Scorer implements Scorer {
+
+    private static final double K1 = 1.2; // Term frequency saturation
+    private static final double B = 0.75; // Length normalization (0 = none, 1 = full)
+    private static final double TITLE_BOOST = 2.0;
+    private static final double DESCRIPTION_BOOST = 1.0;
+
+    private final TFIDFVectorizer vectorizer; // Term id -> vector index
+    private final int[] starts; // Postings of term t are [starts[t], starts[t + 1])
+    private final int[] docs;
+    private final float[] impacts;
+    private final float[] idf;
+    private final float[] maxImpacts; // Per-term upper bound of the impact
+
+    Bm25Scorer(AnalyzedProduct[] products, TFIDFVectorizer vectorizer) {
+        this.vectorizer = vectorizer;
+        int docCount = products.length;
+        int termCount = vectorizer.getVocabSize();
+
+        // 1. Average field lengths
+        double titleTotal = 0, descriptionTotal = 0;
+        for (AnalyzedProduct p : products) {
+            titleTotal += p.getTitleTermCount();
+            descriptionTotal += p.getTermIds().length - p.getTitleTermCount();
+        }
+        double avgTitle = Math.max(1.0, titleTotal / Math.max(1, docCount));
+        double avgDescription = Math.max(1.0, descriptionTotal / Math.max(1, docCount));
+
+        // 2. Pseudo term frequencies per product (sorted by term) and document frequencies
+        int[][] docTerms = new int[docCount][];
+        double[][] docFrequencies = new double[docCount][];
+        int[] df = new int[termCount];
+        for (int d = 0; d < docCount; d++) {
+            int[] ids = products[d].getTermIds();
+            int titleCount = products[d].getTitleTermCount();
+            double titleUnit = TITLE_BOOST / (1 - B + B * titleCount / avgTitle);
+            double descriptionUnit = DESCRIPTION_BOOST / (1 - B + B * (ids.length - titleCount) / avgDescription);
+
+            // (term << 1 | field) sorted: runs of one term, title entries first
+            long[] keyed = new long[ids.length];
+            int n = 0;
+            for (int i = 0; i < ids.length; i++) {
+                int term = vectorizer.vectorIndex(ids[i]);
+                if (term >= 0)
+                    keyed[n++] = (long) term << 1 | (i < titleCount ? 0 : 1);
+            }
+            Arrays.sort(keyed, 0, n);
+            int[] terms = new int[n];
+            double[] tf = new double[n];
+            int distinct = 0;
+            for (int i = 0; i < n;) {
+                int term = (int) (keyed[i] >>> 1);
+                double frequency = 0.0;
+                for (; i < n && (int) (keyed[i] >>> 1) == term; i++)
+                    frequency += (keyed[i] & 1) == 0 ? titleUnit : descriptionUnit;
+                terms[distinct] = term;
+                tf[distinct++] = frequency;
+                df[term]++;
+            }
+            docTerms[d] = Arrays.copyOf(terms, distinct);
+            docFrequencies[d] = Arrays.copyOf(tf, distinct);
+        }
+
+        // 3. Postings with precomputed impacts (products visited in order, so lists stay sorted)
+        this.idf = new float[termCount];
+        this.maxImpacts = new float[termCount];
+        this.starts = new int[termCount + 1];
+        for (int t = 0; t < termCount; t++) {
+            idf[t] = (float) Math.log(1 + (docCount - df[t] + 0.5) / (df[t] + 0.5));
+            starts[t + 1] = starts[t] + df[t];
+        }
+        this.docs = new int[starts[termCount]];
+        this.impacts = new float[docs.length];
+        int[] fill = Arrays.copyOf(starts, termCount);
+        for (int d = 0; d < docCount; d++) {
+            for (int k = 0; k < docTerms[d].length; k++) {
+                int t = docTerms[d][k];
+                double tf = docFrequencies[d][k];
+                float impact = (float) (idf[t] * tf / (K1 + tf));
+                docs[fill[t]] = d;
+                impacts[fill[t]++] = impact;
+                maxImpacts[t] = Math.max(maxImpacts[t], impact);
+            }
+        }
+    }
+
+    @Override
+    public void similarities(SparseVector queryVector, int[] queryTerms, SimilarityAccumulator similarities) {
+        double ideal = 0.0;
+        for (int id : queryTerms) {
+            int t = vectorizer.vectorIndex(id);
+            if (t < 0 || t >= idf.length)
+                continue;
+            ideal += idf[t];
+            for (int e = starts[t]; e < starts[t + 1]; e++)
+                similarities.add(docs[e], impacts[e]);
+        }
+        if (ideal > 0) {
+            for (int k = 0; k < similarities.size(); k++) {
+                int d = similarities.ordinal(k);
+                similarities.set(d, similarities.get(d) / ideal);
+            }
+        }
+    }
+
+    @Override
+    public double upperBound(SparseVector queryVector, int[] queryTerms) {
+        double bound = 0.0, ideal = 0.0;
+        for (int id : queryTerms) {
+            int t = vectorizer.vectorIndex(id);
+            if (t < 0 || t >= idf.length)
+                continue;
+            ideal += idf[t];
+            bound += maxImpacts[t];
+        }
+        return ideal > 0 ? Math.min(1.0, bound / ideal) : 0.0;
+    }
+}
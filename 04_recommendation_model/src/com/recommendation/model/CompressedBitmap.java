@@ -0,0 +1,105 @@
+package com.recommendation.model;
+
+import java.util.BitSet;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable set of product ordinals stored in the smallest of three
+ * encodings, as roaring bitmaps choose per container:
+ * - sorted ordinals (sparse sets, 4 bytes per ordinal),
+ * - runs of consecutive ordinals (categories loaded file by file are a few
+ *   long runs, 8 bytes per run),
+ * - plain bits (dense, scattered sets, N / 8 bytes).
+ *
+ * Unlike roaring, the choice is made once for the whole set rather than per
+ * 64K chunk: catalogues are far below the sizes where that pays off.
+ */
+public final class CompressedBitmap {
+
+    private final int[] values; // Sorted ordinals, or run starts and ends (exclusive) interleaved
+    private final boolean runs; // values holds runs
+    private final BitSet bits; // Plain bits (values is null)
+    private final int cardinality;
+
+    private CompressedBitmap(int[] values, boolean runs, BitSet bits, int cardinality) {
+        this.values = values;
+        this.runs = runs;
+        this.bits = bits;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Encode a set of ordinals.
+     */
+    public static CompressedBitmap of(BitSet set) {
+        int cardinality = set.cardinality();
+        int runCount = 0;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(set.nextClearBit(i)))
+            runCount++;
+
+        long arrayBytes = 4L * cardinality;
+        long runBytes = 8L * runCount;
+        long bitBytes = (set.length() + 7) / 8;
+        if (bitBytes < arrayBytes && bitBytes < runBytes)
+            return new CompressedBitmap(null, false, (BitSet) set.clone(), cardinality);
+
+        boolean runs = runBytes < arrayBytes;
+        int[] values = new int[runs ? 2 * runCount : cardinality];
+        int n = 0;
+        for (int i = set.nextSetBit(0); i >= 0; i = set.nextSetBit(i + 1)) {
+            if (runs) {
+                int end = set.nextClearBit(i);
+                values[n++] = i;
+                values[n++] = end;
+                i = end - 1;
+            } else {
+                values[n++] = i;
+            }
+        }
+        return new CompressedBitmap(values, runs, null, cardinality);
+    }
+
+    public int cardinality() {
+        return cardinality;
+    }
+
+    /**
+     * Set this bitmap's ordinals in a BitSet.
+     */
+    public void orInto(BitSet target) {
+        if (bits != null) {
+            target.or(bits);
+        } else if (runs) {
+            for (int r = 0; r < values.length; r += 2)
+                target.set(values[r], values[r + 1]);
+        } else {
+            for (int i : values)
+                target.set(i);
+        }
+    }
+
+    /**
+     * Visit the ordinals in ascending order.
+     */
+    public void forEach(IntConsumer action) {
+        if (bits != null) {
+            for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1))
+                action.accept(i);
+        } else if (runs) {
+            for (int r = 0; r < values.length; r += 2) {
+                for (int i = values[r]; i < values[r + 1]; i++)
+                    action.accept(i);
+            }
+        } else {
+            for (int i : values)
+                action.accept(i);
+        }
+    }
+
+    /**
+     * Approximate bytes held by the encoding.
+     */
+    public long sizeBytes() {
+        return bits != null ? (bits.length() + 7) / 8 : 4L * values.length;
+    }
+}
@@ -0,0 +1,27 @@
+package com.recommendation.model;
+
+/**
+ * Cosine similarity between TF-IDF vectors, from the inverted index.
+ */
+final class CosineScorer implements Scorer {
+
+    private final InvertedIndex index;
+
+    CosineScorer(InvertedIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public void similarities(SparseVector queryVector, int[] queryTerms, SimilarityAccumulator similarities) {
+        index.dotProducts(queryVector, similarities);
+        for (int k = 0; k < similarities.size(); k++) {
+            int doc = similarities.ordinal(k);
+            similarities.set(doc, index.cosine(similarities.get(doc), queryVector, doc));
+        }
+    }
+
+    @Override
+    public double upperBound(SparseVector queryVector, int[] queryTerms) {
+        return index.cosineUpperBound(queryVector);
+    }
+}
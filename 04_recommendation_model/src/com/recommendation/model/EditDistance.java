@@ -0,0 +1,156 @@
+package com.recommendation.model;
+
+/**
+ * Levenshtein edit distance utilities.
+ *
+ * Words of up to 64 characters use the bit-parallel algorithm of Myers (1999)
+ * in Hyyrö's formulation for edit distance: one DP column is encoded as bit
+ * vectors in two longs, so a column costs a handful of bit operations and no
+ * matrix is allocated. The bounded variant stops as soon as the distance is
+ * known to exceed the bound.
+ */
+public final class EditDistance {
+
+    private static final int WORD_BITS = 64;
+    private static final int TABLE_SIZE = 256; // Direct match-mask table for Latin-1 chars
+
+    // Per-thread match masks, reset after every call so no allocation is needed
+    private static final ThreadLocal<long[]> PEQ = ThreadLocal.withInitial(() -> new long[TABLE_SIZE]);
+
+    private EditDistance() {
+    }
+
+    /**
+     * Exact edit distance.
+     */
+    public static int distance(CharSequence a, CharSequence b) {
+        return boundedDistance(a, b, Integer.MAX_VALUE - 1);
+    }
+
+    /**
+     * Edit distance bounded by {@code maxEdits}.
+     *
+     * @return The exact distance if it is at most {@code maxEdits}, otherwise
+     *         {@code maxEdits + 1}.
+     */
+    public static int boundedDistance(CharSequence a, CharSequence b, int maxEdits) {
+        // Shorter string is the bit-vector pattern
+        CharSequence pattern = a.length() <= b.length() ? a : b;
+        CharSequence text = pattern == a ? b : a;
+        int m = pattern.length(), n = text.length();
+
+        if (n - m > maxEdits)
+            return maxEdits + 1;
+        if (m == 0)
+            return n;
+        if (m > WORD_BITS)
+            return boundedDp(pattern, text, maxEdits);
+
+        long[] peq = PEQ.get();
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            if (c < TABLE_SIZE)
+                peq[c] |= 1L << i;
+        }
+
+        long pv = m == WORD_BITS ? -1L : (1L << m) - 1;
+        long mv = 0L;
+        long last = 1L << (m - 1);
+        int score = m;
+        int result = -1;
+
+        for (int j = 0; j < n; j++) {
+            char c = text.charAt(j);
+            long eq = c < TABLE_SIZE ? peq[c] : matchMask(pattern, c);
+
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0)
+                score++;
+            else if ((mh & last) != 0)
+                score--;
+            ph = (ph << 1) | 1L; // Row 0 grows by one per text char
+            mh <<= 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+
+            // Each remaining column lowers the score by at most one
+            if (score - (n - 1 - j) > maxEdits) {
+                result = maxEdits + 1;
+                break;
+            }
+        }
+
+        for (int i = 0; i < m; i++) {
+            char c = pattern.charAt(i);
+            if (c < TABLE_SIZE)
+                peq[c] = 0L;
+        }
+
+        if (result >= 0)
+            return result;
+        return score <= maxEdits ? score : maxEdits + 1;
+    }
+
+    /**
+     * True if the two strings are at most {@code maxEdits} edits apart.
+     */
+    public static boolean withinDistance(CharSequence a, CharSequence b, int maxEdits) {
+        return boundedDistance(a, b, maxEdits) <= maxEdits;
+    }
+
+    /**
+     * Reference dynamic-programming implementation (full matrix).
+     */
+    public static int levenshtein(String s1, String s2) {
+        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
+        for (int i = 0; i <= s1.length(); i++)
+            dp[i][0] = i;
+        for (int j = 0; j <= s2.length(); j++)
+            dp[0][j] = j;
+        for (int i = 1; i <= s1.length(); i++) {
+            for (int j = 1; j <= s2.length(); j++) {
+                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+            }
+        }
+        return dp[s1.length()][s2.length()];
+    }
+
+    private static long matchMask(CharSequence pattern, char c) {
+        long eq = 0L;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == c)
+                eq |= 1L << i;
+        }
+        return eq;
+    }
+
+    /**
+     * Two-row DP with early exit, for words longer than 64 characters.
+     */
+    private static int boundedDp(CharSequence s1, CharSequence s2, int maxEdits) {
+        int[] prev = new int[s2.length() + 1];
+        int[] curr = new int[s2.length() + 1];
+        for (int j = 0; j <= s2.length(); j++)
+            prev[j] = j;
+        for (int i = 1; i <= s1.length(); i++) {
+            curr[0] = i;
+            int rowMin = curr[0];
+            for (int j = 1; j <= s2.length(); j++) {
+                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
+                curr[j] = Math.min(Math.min(prev[j] + 1, curr[j - 1] + 1), prev[j - 1] + cost);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (rowMin > maxEdits)
+                return maxEdits + 1;
+            int[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+        }
+        int d = prev[s2.length()];
+        return d <= maxEdits ? d : maxEdits + 1;
+    }
+}
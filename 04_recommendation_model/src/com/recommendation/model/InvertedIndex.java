@@ -0,0 +1,426 @@
+package com.recommendation.model;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Inverted index over TF-IDF product vectors.
+ * Maps each term id to a posting list of product ordinals (ascending) and the
+ * TF-IDF weight of the term in that product.
+ *
+ * Similarity is computed term-at-a-time: only products appearing in the
+ * posting lists of the query terms are touched.
+ *
+ * Postings are either on-heap arrays (one pair per term), packed in a single
+ * off-heap VectorArena (row = term), or packed on-heap at reduced precision
+ * in a QuantizedVectors (row = term, scale per product).
+ */
+public class InvertedIndex {
+
+    // Fields below are not final: full precision postings are patched by update()
+    private int[][] postingDocs; // On-heap full precision postings (null otherwise)
+    private double[][] postingWeights;
+    private VectorArena postingArena; // Off-heap postings (null when on-heap)
+    private final QuantizedVectors quantizedPostings; // Reduced precision postings (null at full precision)
+    private final float[] docScales; // Quantization scale per product (null at full precision)
+    private int termCount;
+    private double[] docNorms;
+    private double[] maxNormalizedWeights; // Per-term upper bound of weight / docNorm
+
+    private static final double FLOAT_ACCUMULATION_MARGIN = 1e-5; // Relative, on quantized bounds
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int[] NO_DOCS = new int[0];
+    private static final double[] NO_WEIGHTS = new double[0];
+
+    /**
+     * Build the index from per-product vectors.
+     *
+     * @param vectors   Product vectors indexed by product ordinal.
+     * @param vocabSize Number of terms in the vocabulary.
+     */
+    public InvertedIndex(SparseVector[] vectors, int vocabSize) {
+        this(vectors, vocabSize, false, null, VectorPrecision.DOUBLE);
+    }
+
+    /**
+     * @param offHeap    Pack the postings into an off-heap arena.
+     * @param backingDir Directory for the memory-mapped arena file, or null
+     *                   for direct memory (ignored on-heap).
+     * @param precision  Weight precision; reduced precision postings are
+     *                   on-heap only. Norms and bounds are computed from the
+     *                   weights as stored, so identical vectors still score 1.
+     */
+    public InvertedIndex(SparseVector[] vectors, int vocabSize, boolean offHeap, File backingDir,
+            VectorPrecision precision) {
+        if (offHeap && precision != VectorPrecision.DOUBLE)
+            throw new IllegalArgumentException("Quantized postings cannot be stored off-heap");
+        this.docNorms = new double[vectors.length];
+        this.termCount = vocabSize;
+
+        // 1. Count postings per term
+        int[] lengths = new int[vocabSize];
+        for (SparseVector v : vectors) {
+            for (int i = 0; i < v.size(); i++) {
+                lengths[v.indexAt(i)]++;
+            }
+        }
+
+        this.docScales = precision != VectorPrecision.DOUBLE ? new float[vectors.length] : null;
+        this.quantizedPostings = docScales != null ? new QuantizedVectors(lengths, precision) : null;
+        if (offHeap) {
+            this.postingArena = new VectorArena(lengths, backingDir);
+            this.postingDocs = null;
+            this.postingWeights = null;
+        } else if (quantizedPostings != null) {
+            this.postingArena = null;
+            this.postingDocs = null;
+            this.postingWeights = null;
+        } else {
+            this.postingArena = null;
+            this.postingDocs = new int[vocabSize][];
+            this.postingWeights = new double[vocabSize][];
+            for (int t = 0; t < vocabSize; t++) {
+                // Unused terms (or hash buckets) share one empty list
+                postingDocs[t] = lengths[t] == 0 ? NO_DOCS : new int[lengths[t]];
+                postingWeights[t] = lengths[t] == 0 ? NO_WEIGHTS : new double[lengths[t]];
+            }
+        }
+
+        // 2. Fill postings (documents visited in order, so lists stay sorted)
+        this.maxNormalizedWeights = new double[vocabSize];
+        int[] fill = new int[vocabSize];
+        for (int doc = 0; doc < vectors.length; doc++) {
+            SparseVector v = vectors[doc];
+            float scale = precision.scaleOf(v);
+            SparseVector stored = QuantizedVectors.roundTrip(v, precision, scale);
+            docNorms[doc] = stored.getNorm();
+            if (docScales != null)
+                docScales[doc] = scale;
+            for (int i = 0; i < v.size(); i++) {
+                int term = v.indexAt(i);
+                if (postingArena != null) {
+                    postingArena.set(postingArena.start(term) + fill[term], doc, v.valueAt(i));
+                } else if (quantizedPostings != null) {
+                    quantizedPostings.set(quantizedPostings.start(term) + fill[term], doc, v.valueAt(i) / scale);
+                } else {
+                    postingDocs[term][fill[term]] = doc;
+                    postingWeights[term][fill[term]] = v.valueAt(i);
+                }
+                fill[term]++;
+                double normalized = Math.abs(stored.valueAt(i)) / docNorms[doc];
+                maxNormalizedWeights[term] = Math.max(maxNormalizedWeights[term], normalized);
+            }
+        }
+        if (quantizedPostings != null) {
+            // Dot products are accumulated in float: keep the bounds above them
+            for (int t = 0; t < vocabSize; t++)
+                maxNormalizedWeights[t] *= 1 + FLOAT_ACCUMULATION_MARGIN;
+        }
+    }
+
+    /**
+     * Patch full precision postings for a change to one product, instead of
+     * building the index again from every vector. On-heap, only the posting
+     * lists of its terms are copied (plus one pass shifting ordinals on
+     * removal); off-heap, the entries are copied once into a new arena, with
+     * the product's entries dropped or inserted on the way. Upper bounds of
+     * removed weights are kept; they stay valid, only less tight, until the
+     * next full build.
+     *
+     * @param doc       Product ordinal (the document count for a new product).
+     * @param previous  Its vector before the change, null for a new product.
+     * @param vector    Its vector after the change, null to remove it (later
+     *                  products move down one ordinal).
+     * @param vocabSize Number of terms now in the vocabulary.
+     */
+    public void update(int doc, SparseVector previous, SparseVector vector, int vocabSize) {
+        if (quantizedPostings != null)
+            throw new IllegalStateException("Reduced precision postings cannot be updated");
+        if (vocabSize > termCount) {
+            maxNormalizedWeights = Arrays.copyOf(maxNormalizedWeights, vocabSize);
+            if (postingDocs != null) {
+                postingDocs = Arrays.copyOf(postingDocs, vocabSize);
+                postingWeights = Arrays.copyOf(postingWeights, vocabSize);
+                Arrays.fill(postingDocs, termCount, vocabSize, NO_DOCS);
+                Arrays.fill(postingWeights, termCount, vocabSize, NO_WEIGHTS);
+            }
+        }
+
+        // 1. Norms
+        if (vector == null) {
+            double[] norms = new double[docNorms.length - 1];
+            System.arraycopy(docNorms, 0, norms, 0, doc);
+            System.arraycopy(docNorms, doc + 1, norms, doc, norms.length - doc);
+            docNorms = norms;
+        } else {
+            if (previous == null)
+                docNorms = Arrays.copyOf(docNorms, doc + 1);
+            docNorms[doc] = vector.getNorm();
+            for (int i = 0; i < vector.size(); i++) {
+                double normalized = Math.abs(vector.valueAt(i)) / docNorms[doc];
+                maxNormalizedWeights[vector.indexAt(i)] = Math.max(maxNormalizedWeights[vector.indexAt(i)],
+                        normalized);
+            }
+        }
+
+        // 2. Postings
+        if (postingArena != null) {
+            VectorArena previousArena = postingArena;
+            postingArena = patchArena(previousArena, doc, previous != null, vector, Math.max(vocabSize, termCount));
+            previousArena.close(); // Callers hold the write lock, no query is using it
+        } else {
+            patchPostings(doc, previous, vector);
+        }
+        termCount = Math.max(vocabSize, termCount);
+    }
+
+    private void patchPostings(int doc, SparseVector previous, SparseVector vector) {
+        // 1. Drop the old postings
+        if (previous != null) {
+            for (int i = 0; i < previous.size(); i++) {
+                int term = previous.indexAt(i);
+                int[] docs = postingDocs[term];
+                int at = Arrays.binarySearch(docs, doc);
+                postingDocs[term] = docs.length == 1 ? NO_DOCS : removeAt(docs, at);
+                postingWeights[term] = docs.length == 1 ? NO_WEIGHTS : removeAt(postingWeights[term], at);
+            }
+        }
+        if (vector == null) {
+            for (int[] docs : postingDocs) {
+                for (int j = docs.length - 1; j >= 0 && docs[j] > doc; j--) // Sorted: only the tail moves
+                    docs[j]--;
+            }
+            return;
+        }
+
+        // 2. Add the new ones, in place in each sorted list
+        for (int i = 0; i < vector.size(); i++) {
+            int term = vector.indexAt(i);
+            int[] docs = postingDocs[term];
+            int at = -Arrays.binarySearch(docs, doc) - 1;
+            int[] newDocs = new int[docs.length + 1];
+            double[] newWeights = new double[docs.length + 1];
+            System.arraycopy(docs, 0, newDocs, 0, at);
+            System.arraycopy(postingWeights[term], 0, newWeights, 0, at);
+            newDocs[at] = doc;
+            newWeights[at] = vector.valueAt(i);
+            System.arraycopy(docs, at, newDocs, at + 1, docs.length - at);
+            System.arraycopy(postingWeights[term], at, newWeights, at + 1, docs.length - at);
+            postingDocs[term] = newDocs;
+            postingWeights[term] = newWeights;
+        }
+    }
+
+    /**
+     * Copy of an arena with the entries of one product replaced. Entries are
+     * scanned for the product rather than looked up from its previous vector,
+     * whose zero-weight terms may differ from the ones indexed.
+     *
+     * @param existing The product has entries to drop (not a new product).
+     * @param vector   Its new vector, null to remove it.
+     */
+    private static VectorArena patchArena(VectorArena arena, int doc, boolean existing, SparseVector vector,
+            int rows) {
+        // 1. Row lengths: entries of the product dropped, new ones added
+        int[] lengths = new int[rows];
+        for (int t = 0; t < arena.rowCount(); t++) {
+            int start = arena.start(t), end = arena.end(t);
+            lengths[t] = end - start;
+            if (existing && lengths[t] > 0 && entryOf(arena, start, end, doc) >= 0)
+                lengths[t]--;
+        }
+        double[] weights = new double[rows];
+        boolean[] added = new boolean[rows];
+        if (vector != null) {
+            for (int i = 0; i < vector.size(); i++) {
+                lengths[vector.indexAt(i)]++;
+                weights[vector.indexAt(i)] = vector.valueAt(i);
+                added[vector.indexAt(i)] = true;
+            }
+        }
+
+        // 2. Copy rows in order, shifting later ordinals down on removal
+        File file = arena.getFile();
+        VectorArena patched = new VectorArena(lengths, file != null ? file.getParentFile() : null);
+        int shift = vector == null ? 1 : 0;
+        for (int t = 0; t < rows; t++) {
+            int e = patched.start(t);
+            boolean pending = added[t];
+            if (t < arena.rowCount()) {
+                int end = arena.end(t);
+                for (int from = arena.start(t); from < end; from++) {
+                    int id = arena.id(from);
+                    if (pending && id > doc) {
+                        patched.set(e++, doc, weights[t]);
+                        pending = false;
+                    }
+                    if (id == doc && existing)
+                        continue;
+                    patched.set(e++, id > doc ? id - shift : id, arena.value(from));
+                }
+            }
+            if (pending)
+                patched.set(e, doc, weights[t]);
+        }
+        return patched;
+    }
+
+    // Position of a product in a sorted row of the arena, or -1
+    private static int entryOf(VectorArena arena, int start, int end, int doc) {
+        int low = start, high = end - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int id = arena.id(mid);
+            if (id < doc)
+                low = mid + 1;
+            else if (id > doc)
+                high = mid - 1;
+            else
+                return mid;
+        }
+        return -1;
+    }
+
+    private static int[] removeAt(int[] array, int index) {
+        int[] result = new int[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private static double[] removeAt(double[] array, int index) {
+        double[] result = new double[array.length - 1];
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    /**
+     * Accumulate the dot product between the query and every product sharing
+     * at least one term with it. Terms are visited in ascending order; only
+     * the products in their posting lists are touched.
+     */
+    void dotProducts(SparseVector query, SimilarityAccumulator acc) {
+        if (quantizedPostings != null) {
+            quantizedDotProducts(query, acc);
+            return;
+        }
+        for (int i = 0; i < query.size(); i++) {
+            int term = query.indexAt(i);
+            if (term >= termCount)
+                continue;
+            double q = query.valueAt(i);
+            if (postingArena != null) {
+                int end = postingArena.end(term);
+                for (int e = postingArena.start(term); e < end; e++) {
+                    acc.add(postingArena.id(e), q * postingArena.value(e));
+                }
+                continue;
+            }
+            int[] docs = postingDocs[term];
+            double[] weights = postingWeights[term];
+            for (int j = 0; j < docs.length; j++) {
+                acc.add(docs[j], q * weights[j]);
+            }
+        }
+    }
+
+    /**
+     * Reduced precision dotProducts: query weight * code is accumulated in
+     * float, and each product's scale applied once at the end.
+     */
+    private void quantizedDotProducts(SparseVector query, SimilarityAccumulator acc) {
+        for (int i = 0; i < query.size(); i++) {
+            int term = query.indexAt(i);
+            if (term >= termCount)
+                continue;
+            float q = (float) query.valueAt(i);
+            int end = quantizedPostings.end(term);
+            for (int e = quantizedPostings.start(term); e < end; e++) {
+                acc.addFloat(quantizedPostings.id(e), q * quantizedPostings.code(e));
+            }
+        }
+        for (int k = 0; k < acc.size(); k++) {
+            int doc = acc.ordinal(k);
+            acc.set(doc, acc.get(doc) * docScales[doc]);
+        }
+    }
+
+    /**
+     * Cosine similarity from an accumulated dot product.
+     */
+    public double cosine(double dot, SparseVector query, int doc) {
+        double n1 = query.getNorm(), n2 = docNorms[doc];
+        return (n1 == 0 || n2 == 0) ? 0.0 : dot / (n1 * n2);
+    }
+
+    /**
+     * Upper bound of the cosine similarity between the query and any product,
+     * from the per-term maximum normalized weights.
+     */
+    public double cosineUpperBound(SparseVector query) {
+        if (query.getNorm() == 0)
+            return 0.0;
+        double bound = 0.0;
+        for (int i = 0; i < query.size(); i++) {
+            int term = query.indexAt(i);
+            if (term < maxNormalizedWeights.length)
+                bound += Math.abs(query.valueAt(i)) * maxNormalizedWeights[term];
+        }
+        return Math.min(1.0, bound / query.getNorm());
+    }
+
+    /**
+     * Number of products containing the given term.
+     */
+    public int getPostingSize(int term) {
+        if (term < 0 || term >= termCount)
+            return 0;
+        if (postingArena != null)
+            return postingArena.end(term) - postingArena.start(term);
+        if (quantizedPostings != null)
+            return quantizedPostings.end(term) - quantizedPostings.start(term);
+        return postingDocs[term].length;
+    }
+
+    /**
+     * Approximate bytes held by the postings (ids and weights, plus array
+     * headers for on-heap full precision postings).
+     */
+    public long postingBytes() {
+        if (postingArena != null)
+            return postingArena.sizeBytes();
+        if (quantizedPostings != null)
+            return quantizedPostings.sizeBytes() + 4L * docScales.length;
+        long bytes = 0;
+        for (int t = 0; t < termCount; t++) {
+            if (postingDocs[t] != NO_DOCS)
+                bytes += 2 * ARRAY_HEADER_BYTES + 12L * postingDocs[t].length;
+        }
+        return bytes;
+    }
+
+    public int getDocumentCount() {
+        return docNorms.length;
+    }
+
+    public int getTermCount() {
+        return termCount;
+    }
+
+    /**
+     * Off-heap postings, or null if they are on-heap.
+     */
+    public VectorArena getPostingArena() {
+        return postingArena;
+    }
+
+    /**
+     * Release the off-heap postings (see VectorArena.close); the index must
+     * not be used afterwards. Nothing to do on-heap.
+     */
+    public void close() {
+        if (postingArena != null)
+            postingArena.close();
+    }
+}
@@ -0,0 +1,374 @@
+package com.recommendation.model;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Index of the distinct words (Analyzer tokens) appearing in product texts.
+ * Each word keeps a posting list of the product ordinals that contain it.
+ *
+ * Words are the terms of a TermDictionary, shared with the TF-IDF vectorizer
+ * (its vocabulary), so a word id is its TF-IDF term id and there is a single
+ * vocabulary. The dictionary only grows; an index covers the ids it was built
+ * with and later ones are added by withDocument.
+ *
+ * Keyword matching (substring or typo-tolerant) is resolved once against the
+ * distinct words into term ids, which map straight to products through the
+ * postings, instead of scanning every product text on every query.
+ *
+ * Two word-level structures avoid scanning the whole vocabulary, both keyed
+ * on term ids:
+ * - a trigram index (trigram code -> term ids) for substring matches,
+ * - a BK-tree over the term ids for edit-distance matches.
+ */
+public class KeywordIndex {
+
+    private static final int GRAM = 3;
+    private static final int ALPHABET = 36; // Analyzer tokens are folded to a-z and 0-9
+    private static final int[] NO_IDS = new int[0];
+
+    private final TermDictionary terms; // Shared, append-only: ids [0, wordCount) are indexed here
+    private final int wordCount;
+    private final int[][] postings; // Product ordinals per term id, ascending
+    private final int[][] trigramWords; // Term ids per trigram code (see trigram), null when none
+
+    // BK-tree: node i is term i, children kept as a linked list of siblings
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] edgeDistance; // Distance between a node and its parent
+    private final int[] maxChildDistance; // Largest edge distance below each node
+
+    /**
+     * @param terms      Dictionary the term ids refer to.
+     * @param docTermIds Term ids of each product's text (see
+     *                   Analyzer.termIds), indexed by product ordinal; -1
+     *                   entries are ignored.
+     */
+    public KeywordIndex(TermDictionary terms, int[][] docTermIds) {
+        this(buildPostings(docTermIds, terms.size()), terms);
+        Arrays.fill(firstChild, -1);
+        Arrays.fill(nextSibling, -1);
+        TermDictionary.TermView node = terms.view(), word = terms.view();
+        for (int i = 1; i < wordCount; i++) {
+            insertIntoTree(i, node, word);
+        }
+    }
+
+    // Index over the given postings, with an empty BK-tree
+    private KeywordIndex(int[][] postings, TermDictionary terms) {
+        this.terms = terms;
+        this.wordCount = terms.size();
+        this.postings = postings;
+        this.trigramWords = extendTrigramIndex(new int[ALPHABET * ALPHABET * ALPHABET][], terms, 0, wordCount);
+        this.firstChild = new int[wordCount];
+        this.nextSibling = new int[wordCount];
+        this.edgeDistance = new int[wordCount];
+        this.maxChildDistance = new int[wordCount];
+    }
+
+    /**
+     * Derived index sharing the word structures of a previous one: known words
+     * keep their place in the BK-tree, so only words added to the dictionary
+     * since are inserted.
+     */
+    private KeywordIndex(KeywordIndex previous, int[][] postings) {
+        int known = previous.wordCount;
+        this.terms = previous.terms;
+        this.wordCount = terms.size();
+        this.postings = postings;
+
+        if (wordCount == known) {
+            this.trigramWords = previous.trigramWords;
+            this.firstChild = previous.firstChild;
+            this.nextSibling = previous.nextSibling;
+            this.edgeDistance = previous.edgeDistance;
+            this.maxChildDistance = previous.maxChildDistance;
+            return;
+        }
+        this.trigramWords = extendTrigramIndex(previous.trigramWords.clone(), terms, known, wordCount);
+        this.firstChild = Arrays.copyOf(previous.firstChild, wordCount);
+        this.nextSibling = Arrays.copyOf(previous.nextSibling, wordCount);
+        this.edgeDistance = Arrays.copyOf(previous.edgeDistance, wordCount);
+        this.maxChildDistance = Arrays.copyOf(previous.maxChildDistance, wordCount);
+        Arrays.fill(firstChild, known, wordCount, -1);
+        Arrays.fill(nextSibling, known, wordCount, -1);
+        TermDictionary.TermView node = terms.view(), word = terms.view();
+        for (int i = Math.max(1, known); i < wordCount; i++) {
+            insertIntoTree(i, node, word);
+        }
+    }
+
+    /**
+     * Index with the text of one product replaced, or appended when
+     * {@code ordinal} equals the current product count. Only the postings of
+     * its old and new words are copied; this index is not modified.
+     *
+     * @param previousTermIds Term ids of the product's previous text, null
+     *                        for a new product.
+     * @param termIds         Term ids of the new text, in the shared
+     *                        dictionary (new words already added to it).
+     */
+    public KeywordIndex withDocument(int ordinal, int[] previousTermIds, int[] termIds) {
+        int[][] newPostings = Arrays.copyOf(postings, terms.size());
+        Arrays.fill(newPostings, postings.length, newPostings.length, NO_IDS);
+        if (previousTermIds != null) {
+            for (int w : distinctWords(previousTermIds))
+                newPostings[w] = withoutOrdinal(newPostings[w], ordinal);
+        }
+        for (int w : distinctWords(termIds))
+            newPostings[w] = withOrdinal(newPostings[w], ordinal);
+        return new KeywordIndex(this, newPostings);
+    }
+
+    /**
+     * Index without the given product; later products move down one ordinal.
+     * Its words stay in the index (with empty postings if no longer used).
+     *
+     * @param termIds Term ids of the product's text.
+     */
+    public KeywordIndex withoutDocument(int ordinal, int[] termIds) {
+        int[][] newPostings = postings.clone();
+        for (int w : distinctWords(termIds))
+            newPostings[w] = withoutOrdinal(newPostings[w], ordinal);
+        for (int w = 0; w < newPostings.length; w++) {
+            int[] posting = newPostings[w];
+            int at = -Arrays.binarySearch(posting, ordinal) - 1; // Not there any more: first later ordinal
+            if (at == posting.length)
+                continue;
+            if (posting == postings[w])
+                posting = posting.clone(); // Still shared with this index
+            for (int j = at; j < posting.length; j++)
+                posting[j]--;
+            newPostings[w] = posting;
+        }
+        return new KeywordIndex(this, newPostings);
+    }
+
+    // Copy of a sorted posting list with an ordinal added
+    private static int[] withOrdinal(int[] posting, int ordinal) {
+        int at = Arrays.binarySearch(posting, ordinal);
+        if (at >= 0)
+            return posting;
+        at = -at - 1;
+        int[] result = new int[posting.length + 1];
+        System.arraycopy(posting, 0, result, 0, at);
+        result[at] = ordinal;
+        System.arraycopy(posting, at, result, at + 1, posting.length - at);
+        return result;
+    }
+
+    // Copy of a sorted posting list without an ordinal
+    private static int[] withoutOrdinal(int[] posting, int ordinal) {
+        int at = Arrays.binarySearch(posting, ordinal);
+        if (at < 0)
+            return posting;
+        int[] result = new int[posting.length - 1];
+        System.arraycopy(posting, 0, result, 0, at);
+        System.arraycopy(posting, at + 1, result, at, result.length - at);
+        return result;
+    }
+
+    // Distinct known ids of a text's term ids
+    private static int[] distinctWords(int[] termIds) {
+        return Arrays.stream(termIds).filter(id -> id >= 0).distinct().toArray();
+    }
+
+    private static int[][] buildPostings(int[][] docTermIds, int wordCount) {
+        int[][] docWords = new int[docTermIds.length][];
+        int[] lengths = new int[wordCount];
+        for (int doc = 0; doc < docTermIds.length; doc++) {
+            docWords[doc] = distinctWords(docTermIds[doc]);
+            for (int w : docWords[doc])
+                lengths[w]++;
+        }
+        int[][] postings = new int[wordCount][];
+        for (int w = 0; w < wordCount; w++)
+            postings[w] = lengths[w] == 0 ? NO_IDS : new int[lengths[w]];
+        // Documents are visited in order, so posting lists stay sorted
+        int[] fill = new int[wordCount];
+        for (int doc = 0; doc < docWords.length; doc++) {
+            for (int w : docWords[doc])
+                postings[w][fill[w]++] = doc;
+        }
+        return postings;
+    }
+
+    /**
+     * Add the trigrams of terms [from, to) to a trigram index, in place.
+     * Ids are appended in ascending order, so lists stay sorted.
+     */
+    private static int[][] extendTrigramIndex(int[][] index, TermDictionary terms, int from, int to) {
+        TermDictionary.TermView word = terms.view();
+        for (int w = from; w < to; w++) {
+            word.of(w);
+            for (int i = 0; i + GRAM <= word.length(); i++) {
+                int code = trigram(word, i);
+                if (code < 0)
+                    continue;
+                int[] ids = index[code];
+                if (ids == null) {
+                    index[code] = new int[] { w };
+                } else if (ids[ids.length - 1] != w) { // Once per word
+                    ids = Arrays.copyOf(ids, ids.length + 1);
+                    ids[ids.length - 1] = w;
+                    index[code] = ids;
+                }
+            }
+        }
+        return index;
+    }
+
+    // Code of the trigram at text[i, i + GRAM), -1 if it has a char no token contains
+    private static int trigram(CharSequence text, int i) {
+        int code = 0;
+        for (int k = i; k < i + GRAM; k++) {
+            char c = text.charAt(k);
+            int digit = c >= 'a' && c <= 'z' ? c - 'a' : c >= '0' && c <= '9' ? 26 + c - '0' : -1;
+            if (digit < 0)
+                return -1;
+            code = code * ALPHABET + digit;
+        }
+        return code;
+    }
+
+    /**
+     * Write the postings and BK-tree (see ModelSnapshot). The words
+     * themselves are the dictionary's, written with it; the trigram index is
+     * rebuilt on load.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(wordCount);
+        for (int[] posting : postings)
+            ModelSnapshot.writeInts(out, posting);
+        ModelSnapshot.writeInts(out, firstChild);
+        ModelSnapshot.writeInts(out, nextSibling);
+        ModelSnapshot.writeInts(out, edgeDistance);
+        ModelSnapshot.writeInts(out, maxChildDistance);
+    }
+
+    /**
+     * @param terms The dictionary the index was built on, as loaded.
+     */
+    static KeywordIndex readFrom(DataInputStream in, TermDictionary terms) throws IOException {
+        if (in.readInt() != terms.size())
+            throw new IOException("Keyword index does not match the term dictionary");
+        int[][] postings = new int[terms.size()][];
+        for (int w = 0; w < postings.length; w++)
+            postings[w] = ModelSnapshot.readInts(in);
+        KeywordIndex index = new KeywordIndex(postings, terms);
+        for (int[] tree : new int[][] { index.firstChild, index.nextSibling, index.edgeDistance,
+                index.maxChildDistance }) {
+            int[] values = ModelSnapshot.readInts(in);
+            if (values.length != tree.length)
+                throw new IOException("Keyword index does not match the term dictionary");
+            System.arraycopy(values, 0, tree, 0, tree.length);
+        }
+        return index;
+    }
+
+    private void insertIntoTree(int word, TermDictionary.TermView nodeView, TermDictionary.TermView wordView) {
+        wordView.of(word);
+        int node = 0;
+        while (true) {
+            int d = EditDistance.distance(nodeView.of(node), wordView);
+            int child = firstChild[node];
+            while (child != -1 && edgeDistance[child] != d) {
+                child = nextSibling[child];
+            }
+            if (child == -1) {
+                edgeDistance[word] = d;
+                nextSibling[word] = firstChild[node];
+                firstChild[node] = word;
+                maxChildDistance[node] = Math.max(maxChildDistance[node], d);
+                return;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Find the products containing the keyword, either as a substring of one
+     * of their words or within {@code maxEdits} edits of a word.
+     *
+     * @return Product ordinals matching the keyword.
+     */
+    public BitSet match(String keyword, int maxEdits) {
+        BitSet result = new BitSet();
+        for (int w : matchWords(keyword, maxEdits)) {
+            for (int doc : postings[w]) {
+                result.set(doc);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the distinct words containing the keyword or within
+     * {@code maxEdits} edits of it.
+     *
+     * @return Ids of the matching words (unordered, no duplicates).
+     */
+    public int[] matchWords(String keyword, int maxEdits) {
+        BitSet matched = new BitSet(wordCount);
+
+        // 1. Substring matches: verify the words sharing the keyword's rarest trigram
+        if (keyword.length() >= GRAM) {
+            int[] rarest = null;
+            for (int i = 0; i + GRAM <= keyword.length(); i++) {
+                int code = trigram(keyword, i);
+                int[] ids = code >= 0 ? trigramWords[code] : null;
+                if (ids == null) {
+                    rarest = new int[0]; // Some trigram never occurs: no word contains the keyword
+                    break;
+                }
+                if (rarest == null || ids.length < rarest.length)
+                    rarest = ids;
+            }
+            for (int w : rarest) {
+                if (terms.termContains(w, keyword))
+                    matched.set(w);
+            }
+        } else {
+            for (int w = 0; w < wordCount; w++) {
+                if (terms.termContains(w, keyword))
+                    matched.set(w);
+            }
+        }
+
+        // 2. Edit-distance matches: BK-tree search, pruned by the triangle inequality
+        if (wordCount > 0) {
+            TermDictionary.TermView view = terms.view();
+            int[] stack = new int[wordCount];
+            int top = 0;
+            stack[top++] = 0;
+            while (top > 0) {
+                int node = stack[--top];
+                // Beyond this distance neither the node nor any child can match
+                int cap = maxEdits + maxChildDistance[node];
+                int d = EditDistance.boundedDistance(view.of(node), keyword, cap);
+                if (d <= maxEdits)
+                    matched.set(node);
+                for (int child = firstChild[node]; child != -1; child = nextSibling[child]) {
+                    if (Math.abs(edgeDistance[child] - d) <= maxEdits)
+                        stack[top++] = child;
+                }
+            }
+        }
+
+        return matched.stream().toArray();
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    /**
+     * The dictionary the word ids refer to.
+     */
+    TermDictionary terms() {
+        return terms;
+    }
+}
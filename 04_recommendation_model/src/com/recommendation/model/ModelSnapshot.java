@@ -0,0 +1,266 @@
+package com.recommendation.model;
+
+import com.recommendation.preprocessing.Product;
+import com.recommendation.preprocessing.Review;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Binary snapshot file of a trained RecommendationEngine.
+ *
+ * Layout: magic, format version, hash of the source CSV files, the engine
+ * payload (see RecommendationEngine.saveSnapshot), then a CRC32 of everything
+ * before it. A snapshot is only used if the magic, version, source hash and
+ * checksum all match; otherwise the caller retrains from the CSV files.
+ *
+ * Strings are stored as length-prefixed UTF-8 (descriptions and reviews can
+ * exceed the 64 KB limit of writeUTF).
+ */
+public final class ModelSnapshot {
+
+    private static final int MAGIC = 0x52435348; // "RCSH"
+    public static final int FORMAT_VERSION = 7;
+
+    private ModelSnapshot() {
+    }
+
+    /**
+     * Fingerprint of the given source files (name, size and CRC32C of each),
+     * used to detect that a snapshot was built from other data.
+     */
+    public static String hashSources(String... paths) throws IOException {
+        StringBuilder hash = new StringBuilder();
+        byte[] buffer = new byte[64 * 1024];
+        for (String path : paths) {
+            File file = new File(path);
+            CRC32C crc = new CRC32C();
+            try (InputStream in = Files.newInputStream(file.toPath())) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    crc.update(buffer, 0, n);
+                }
+            }
+            hash.append(String.format("%s:%d:%08x;", file.getName(), file.length(), crc.getValue()));
+        }
+        return hash.toString();
+    }
+
+    // --- Framing ---
+
+    interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    interface PayloadReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Write the snapshot to a temporary file, then move it into place so a
+     * crash never leaves a truncated snapshot behind.
+     */
+    static void write(File file, String sourceHash, PayloadWriter payload) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (OutputStream raw = new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), 1 << 16)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(raw, crc));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(sourceHash);
+            payload.write(out);
+            out.flush();
+            new DataOutputStream(raw).writeLong(crc.getValue());
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Read a snapshot. The file is read in one go and its checksum verified
+     * before anything is parsed.
+     *
+     * @return The payload, or null if the file is missing, from another format
+     *         version or other source files, or corrupt.
+     */
+    static <T> T read(File file, String sourceHash, PayloadReader<T> payload) {
+        if (!file.isFile())
+            return null;
+        try {
+            byte[] bytes = Files.readAllBytes(file.toPath());
+            int length = bytes.length - Long.BYTES;
+            if (length < 0)
+                return null;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, length);
+            if (ByteBuffer.wrap(bytes, length, Long.BYTES).getLong() != crc.getValue())
+                return null;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+                return null;
+            if (!in.readUTF().equals(sourceHash))
+                return null;
+            return payload.read(in);
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Ignoring unreadable model snapshot " + file + ": " + e);
+            return null;
+        }
+    }
+
+    // --- Field encoding ---
+
+    static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Terms in id order, so reading them back gives the same ids
+    static void writeTerms(DataOutputStream out, TermDictionary terms) throws IOException {
+        out.writeInt(terms.size());
+        for (int id = 0; id < terms.size(); id++)
+            writeString(out, terms.term(id));
+    }
+
+    static TermDictionary readTerms(DataInputStream in) throws IOException {
+        TermDictionary terms = new TermDictionary();
+        int size = in.readInt();
+        for (int id = 0; id < size; id++)
+            terms.add(readString(in));
+        return terms;
+    }
+
+    static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int v : values)
+            out.writeInt(v);
+    }
+
+    static int[] readInts(DataInputStream in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readInt();
+        return values;
+    }
+
+    static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float v : values)
+            out.writeFloat(v);
+    }
+
+    static float[] readFloats(DataInputStream in) throws IOException {
+        float[] values = new float[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readFloat();
+        return values;
+    }
+
+    static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double v : values)
+            out.writeDouble(v);
+    }
+
+    static double[] readDoubles(DataInputStream in) throws IOException {
+        double[] values = new double[in.readInt()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = in.readDouble();
+        return values;
+    }
+
+    static void writeVector(DataOutputStream out, SparseVector v) throws IOException {
+        out.writeInt(v.getDimension());
+        out.writeInt(v.size());
+        for (int i = 0; i < v.size(); i++) {
+            out.writeInt(v.indexAt(i));
+            out.writeDouble(v.valueAt(i));
+        }
+    }
+
+    static SparseVector readVector(DataInputStream in) throws IOException {
+        int dimension = in.readInt();
+        int[] indices = new int[in.readInt()];
+        double[] values = new double[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = in.readInt();
+            values[i] = in.readDouble();
+        }
+        return new SparseVector(dimension, indices, values);
+    }
+
+    /**
+     * Products are stored with their reviews, so a loaded engine can still be
+     * updated incrementally or retrained.
+     */
+    static void writeProducts(DataOutputStream out, List<Product> products) throws IOException {
+        out.writeInt(products.size());
+        for (Product p : products) {
+            writeString(out, p.getId());
+            writeString(out, p.getTitle());
+            out.writeDouble(p.getPrice());
+            writeString(out, p.getLink());
+            writeString(out, p.getImageUrl());
+            writeString(out, p.getDescription());
+            writeString(out, p.getCategory());
+            out.writeInt(p.getReviews().size());
+            for (Review r : p.getReviews()) {
+                writeString(out, r.getAuthor());
+                out.writeDouble(r.getRating());
+                writeString(out, r.getTitle());
+                writeString(out, r.getBody());
+                out.writeLong(r.getDate() == null ? Long.MIN_VALUE : r.getDate().toEpochDay());
+            }
+        }
+    }
+
+    static List<Product> readProducts(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<Product> products = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Product p = new Product(readString(in), readString(in), in.readDouble(), readString(in),
+                    readString(in), readString(in), readString(in));
+            int reviews = in.readInt();
+            for (int r = 0; r < reviews; r++) {
+                String author = readString(in);
+                double rating = in.readDouble();
+                String title = readString(in);
+                String body = readString(in);
+                long epochDay = in.readLong();
+                p.addReview(new Review(author, rating, title, body,
+                        epochDay == Long.MIN_VALUE ? null : LocalDate.ofEpochDay(epochDay)));
+            }
+            products.add(p);
+        }
+        return products;
+    }
+}
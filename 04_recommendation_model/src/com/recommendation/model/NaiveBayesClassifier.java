@@ -1,11 +1,5 @@
 package com.recommendation.model;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-import java.util.HashSet;
-import java.util.List;
-import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
@@ -22,13 +16,14 @@ import java.util.Arrays;
  */
 public class NaiveBayesClassifier {
 
-    private Map<String, Integer> positiveWordCounts = new HashMap<>();
-    private Map<String, Integer> negativeWordCounts = new HashMap<>();
+    // Word counts per class, indexed by vocabulary id
+    private TermDictionary vocabulary = new TermDictionary();
+    private int[] positiveWordCounts = new int[64];
+    private int[] negativeWordCounts = new int[64];
     private int totalPositiveWords = 0;
     private int totalNegativeWords = 0;
     private int totalPositiveDocs = 0;
     private int totalNegativeDocs = 0;
-    private Set<String> vocabulary = new HashSet<>();
 
     public NaiveBayesClassifier() {
         // Train on seed data immediately upon instantiation
@@ -85,22 +80,23 @@ public class NaiveBayesClassifier {
         if (text == null || text.isEmpty())
             return;
 
-        List<String> tokens = tokenize(text);
+        // Same tokens as the TF-IDF vectorizer (see Analyzer), stop words included:
+        // "pas", "bon", "tres" are sentiment cues
+        Analyzer analyzer = Analyzer.get();
+        int count = analyzer.analyze(text, vocabulary, 0, true, true);
+        int[] ids = analyzer.ids();
+        ensureCapacity(vocabulary.size());
 
         if (isPositive) {
             totalPositiveDocs++;
-            for (String token : tokens) {
-                positiveWordCounts.put(token, positiveWordCounts.getOrDefault(token, 0) + 1);
-                totalPositiveWords++;
-                vocabulary.add(token);
-            }
+            for (int k = 0; k < count; k++)
+                positiveWordCounts[ids[k]]++;
+            totalPositiveWords += count;
         } else {
             totalNegativeDocs++;
-            for (String token : tokens) {
-                negativeWordCounts.put(token, negativeWordCounts.getOrDefault(token, 0) + 1);
-                totalNegativeWords++;
-                vocabulary.add(token);
-            }
+            for (int k = 0; k < count; k++)
+                negativeWordCounts[ids[k]]++;
+            totalNegativeWords += count;
         }
     }
 
@@ -113,7 +109,9 @@ public class NaiveBayesClassifier {
         if (text == null || text.isEmpty())
             return 0.0;
 
-        List<String> tokens = tokenize(text);
+        Analyzer analyzer = Analyzer.get();
+        int count = analyzer.analyze(text, vocabulary, 0, false, true);
+        int[] ids = analyzer.ids();
         int totalDocs = totalPositiveDocs + totalNegativeDocs;
         int vocabSize = vocabulary.size();
 
@@ -123,15 +121,16 @@ public class NaiveBayesClassifier {
         double logProbNeg = Math.log((double) totalNegativeDocs / totalDocs);
 
         // 2. Calculate Likelihoods P(Word | Class)
-        for (String token : tokens) {
-            if (!vocabulary.contains(token))
+        for (int k = 0; k < count; k++) {
+            int id = ids[k];
+            if (id < 0)
                 continue; // Skip unknown words
 
             // Laplace Smoothing: (Count + 1) / (Total + VocabSize)
-            double probWordPos = (double) (positiveWordCounts.getOrDefault(token, 0) + 1)
+            double probWordPos = (double) (positiveWordCounts[id] + 1)
                     / (totalPositiveWords + vocabSize);
 
-            double probWordNeg = (double) (negativeWordCounts.getOrDefault(token, 0) + 1)
+            double probWordNeg = (double) (negativeWordCounts[id] + 1)
                     / (totalNegativeWords + vocabSize);
 
             logProbPos += Math.log(probWordPos);
@@ -148,9 +147,11 @@ public class NaiveBayesClassifier {
         return (2.0 / (1.0 + Math.exp(-diff))) - 1.0;
     }
 
-    private List<String> tokenize(String text) {
-        // Simple tokenizer: remove non-word chars, lowercase, split by whitespace
-        String clean = text.replaceAll("[^a-zA-Z\\s]", "").toLowerCase();
-        return Arrays.asList(clean.split("\\s+"));
+    private void ensureCapacity(int vocabSize) {
+        if (vocabSize > positiveWordCounts.length) {
+            int length = Math.max(vocabSize, positiveWordCounts.length * 2);
+            positiveWordCounts = Arrays.copyOf(positiveWordCounts, length);
+            negativeWordCounts = Arrays.copyOf(negativeWordCounts, length);
+        }
     }
 }
@@ -0,0 +1,77 @@
+package com.recommendation.model;
+
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Product ordinals sorted by a key (price, static score), patched for a
+ * single product change instead of sorted again: a binary search and one
+ * array copy.
+ *
+ * Comparators order two ordinals by their key, ties by ascending ordinal, so
+ * every ordinal has exactly one place.
+ */
+final class OrdinalOrder {
+
+    private OrdinalOrder() {
+    }
+
+    /**
+     * Position of an ordinal in the order.
+     *
+     * @param comparator Ordering the order was built with (the ordinal's key
+     *                   as it was then).
+     */
+    static int positionOf(int[] order, int ordinal, IntBinaryOperator comparator) {
+        int lo = 0, hi = order.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = comparator.applyAsInt(order[mid], ordinal);
+            if (cmp < 0)
+                lo = mid + 1;
+            else if (cmp > 0)
+                hi = mid - 1;
+            else
+                return mid;
+        }
+        throw new IllegalArgumentException("Ordinal " + ordinal + " is not in the order");
+    }
+
+    /**
+     * The order with an ordinal inserted at its place.
+     */
+    static int[] insert(int[] order, int ordinal, IntBinaryOperator comparator) {
+        int lo = 0, hi = order.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (comparator.applyAsInt(order[mid], ordinal) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        int[] inserted = new int[order.length + 1];
+        System.arraycopy(order, 0, inserted, 0, lo);
+        inserted[lo] = ordinal;
+        System.arraycopy(order, lo, inserted, lo + 1, order.length - lo);
+        return inserted;
+    }
+
+    /**
+     * The order without the entry at a position.
+     *
+     * @param shift The product was removed from the catalogue: later
+     *              ordinals move down one.
+     */
+    static int[] removeAt(int[] order, int position, boolean shift) {
+        int removed = order[position];
+        int[] remaining = new int[order.length - 1];
+        System.arraycopy(order, 0, remaining, 0, position);
+        System.arraycopy(order, position + 1, remaining, position, remaining.length - position);
+        if (shift) {
+            for (int r = 0; r < remaining.length; r++) {
+                if (remaining[r] > removed)
+                    remaining[r]--;
+            }
+        }
+        return remaining;
+    }
+}
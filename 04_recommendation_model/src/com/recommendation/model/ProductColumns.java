@@ -0,0 +1,315 @@
+package com.recommendation.model;
+
+import com.recommendation.preprocessing.Product;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Immutable columnar snapshot of the numeric product attributes used for
+ * filtering and static scoring, indexed by product ordinal.
+ *
+ * Keeping each attribute in its own primitive array lets the filter and
+ * scoring loops run over contiguous memory instead of chasing pointers
+ * through Product objects and boxed map entries.
+ *
+ * Filtering is sub-linear: each category has a compressed bitmap of its
+ * products (see CompressedBitmap; categories are mostly long runs of
+ * ordinals), and a price-sorted ordinal array turns a price range into a
+ * binary search.
+ *
+ * A catalogue change to one product gives a new snapshot ({@link #with},
+ * {@link #without}): the columns are copied and the price order patched,
+ * not sorted again.
+ */
+public class ProductColumns {
+
+    /** Category id meaning "no category filter". */
+    public static final short ANY_CATEGORY = -1;
+    /** Category id of products without a category, and of unknown names. */
+    public static final short NO_CATEGORY = -2;
+
+    private final double[] price;
+    private final float[] avgRating;
+    private final int[] reviewCount;
+    private final float[] sentiment; // Average review sentiment, -1 to 1
+    private final short[] categoryId;
+    private final String[] categoryNames; // Indexed by category id
+
+    // Filter indexes
+    private final CompressedBitmap[] categoryBitmaps; // Indexed by category id
+    private final int[] priceOrder; // Product ordinals sorted by ascending price
+    private final double[] sortedPrices; // price[priceOrder[r]]
+
+    /**
+     * @param products   Products in ordinal order.
+     * @param sentiments Average review sentiment per product ordinal.
+     */
+    public ProductColumns(List<Product> products, double[] sentiments) {
+        int n = products.size();
+        this.price = new double[n];
+        this.avgRating = new float[n];
+        this.reviewCount = new int[n];
+        this.sentiment = new float[n];
+        this.categoryId = new short[n];
+
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            Product p = products.get(i);
+            price[i] = p.getPrice();
+            avgRating[i] = (float) p.getAvgRating();
+            reviewCount[i] = p.getReviewCount();
+            sentiment[i] = (float) sentiments[i];
+            categoryId[i] = internCategory(names, p.getCategory());
+        }
+        this.categoryNames = names.toArray(new String[0]);
+        this.categoryBitmaps = bitmapsOf(categoryId, categoryNames.length);
+
+        Integer[] byPrice = new Integer[n];
+        for (int i = 0; i < n; i++)
+            byPrice[i] = i;
+        Arrays.sort(byPrice, (a, b) -> comparePrices(price, a, b));
+        this.priceOrder = new int[n];
+        for (int r = 0; r < n; r++)
+            priceOrder[r] = byPrice[r];
+        this.sortedPrices = sortedPricesOf(price, priceOrder);
+    }
+
+    private ProductColumns(double[] price, float[] avgRating, int[] reviewCount, float[] sentiment,
+            short[] categoryId, String[] categoryNames, int[] priceOrder) {
+        this.price = price;
+        this.avgRating = avgRating;
+        this.reviewCount = reviewCount;
+        this.sentiment = sentiment;
+        this.categoryId = categoryId;
+        this.categoryNames = categoryNames;
+        this.categoryBitmaps = bitmapsOf(categoryId, categoryNames.length);
+        this.priceOrder = priceOrder;
+        this.sortedPrices = sortedPricesOf(price, priceOrder);
+    }
+
+    /**
+     * Columns with the product at an ordinal replaced, or appended when the
+     * ordinal is {@link #size()}.
+     */
+    public ProductColumns with(int ordinal, Product product, double productSentiment) {
+        boolean added = ordinal == size();
+        int n = added ? size() + 1 : size();
+        double[] newPrice = Arrays.copyOf(price, n);
+        float[] newRating = Arrays.copyOf(avgRating, n);
+        int[] newReviews = Arrays.copyOf(reviewCount, n);
+        float[] newSentiment = Arrays.copyOf(sentiment, n);
+        short[] newCategory = Arrays.copyOf(categoryId, n);
+        List<String> names = new ArrayList<>(Arrays.asList(categoryNames));
+        newPrice[ordinal] = product.getPrice();
+        newRating[ordinal] = (float) product.getAvgRating();
+        newReviews[ordinal] = product.getReviewCount();
+        newSentiment[ordinal] = (float) productSentiment;
+        newCategory[ordinal] = internCategory(names, product.getCategory());
+
+        // Out of the price order at its old price, back in at the new one
+        int[] order = priceOrder;
+        if (!added)
+            order = OrdinalOrder.removeAt(order,
+                    OrdinalOrder.positionOf(order, ordinal, (a, b) -> comparePrices(price, a, b)), false);
+        order = OrdinalOrder.insert(order, ordinal, (a, b) -> comparePrices(newPrice, a, b));
+        return new ProductColumns(newPrice, newRating, newReviews, newSentiment, newCategory,
+                names.toArray(new String[0]), order);
+    }
+
+    /**
+     * Columns without the product at an ordinal; later products move down
+     * one ordinal. Its category keeps its id, even if now empty.
+     */
+    public ProductColumns without(int ordinal) {
+        int[] order = OrdinalOrder.removeAt(priceOrder,
+                OrdinalOrder.positionOf(priceOrder, ordinal, (a, b) -> comparePrices(price, a, b)), true);
+        return new ProductColumns(removeAt(price, ordinal), removeAt(avgRating, ordinal),
+                removeAt(reviewCount, ordinal), removeAt(sentiment, ordinal), removeAt(categoryId, ordinal),
+                categoryNames, order);
+    }
+
+    // Ascending price, ties by ordinal
+    private static int comparePrices(double[] price, int a, int b) {
+        int cmp = Double.compare(price[a], price[b]);
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+    }
+
+    private static CompressedBitmap[] bitmapsOf(short[] categoryId, int categoryCount) {
+        BitSet[] bits = new BitSet[categoryCount];
+        for (int id = 0; id < categoryCount; id++)
+            bits[id] = new BitSet(categoryId.length);
+        for (int i = 0; i < categoryId.length; i++) {
+            if (categoryId[i] >= 0)
+                bits[categoryId[i]].set(i);
+        }
+        CompressedBitmap[] bitmaps = new CompressedBitmap[categoryCount];
+        for (int id = 0; id < categoryCount; id++)
+            bitmaps[id] = CompressedBitmap.of(bits[id]);
+        return bitmaps;
+    }
+
+    private static double[] sortedPricesOf(double[] price, int[] priceOrder) {
+        double[] sorted = new double[priceOrder.length];
+        for (int r = 0; r < priceOrder.length; r++)
+            sorted[r] = price[priceOrder[r]];
+        return sorted;
+    }
+
+    // Copy of a primitive array without one element
+    @SuppressWarnings("unchecked")
+    private static <A> A removeAt(A array, int index) {
+        int length = Array.getLength(array);
+        A result = (A) Array.newInstance(array.getClass().getComponentType(), length - 1);
+        System.arraycopy(array, 0, result, 0, index);
+        System.arraycopy(array, index + 1, result, index, length - 1 - index);
+        return result;
+    }
+
+    private static short internCategory(List<String> names, String category) {
+        if (category == null)
+            return NO_CATEGORY;
+        for (int id = 0; id < names.size(); id++) {
+            if (names.get(id).equalsIgnoreCase(category))
+                return (short) id;
+        }
+        if (names.size() == Short.MAX_VALUE)
+            throw new IllegalStateException("Too many categories: " + names.size());
+        names.add(category);
+        return (short) (names.size() - 1);
+    }
+
+    /**
+     * Resolve a category filter (case-insensitive).
+     *
+     * @return {@link #ANY_CATEGORY} for no filter ("All Categories", empty or
+     *         null), {@link #NO_CATEGORY} for an unknown category.
+     */
+    public short resolveCategory(String category) {
+        if (category == null || category.isEmpty() || category.equalsIgnoreCase("All Categories"))
+            return ANY_CATEGORY;
+        for (int id = 0; id < categoryNames.length; id++) {
+            if (categoryNames[id].equalsIgnoreCase(category))
+                return (short) id;
+        }
+        return NO_CATEGORY;
+    }
+
+    /**
+     * True if the product passes the price range and category filter.
+     */
+    public boolean matches(int ordinal, double minPrice, double maxPrice, short category) {
+        double p = price[ordinal];
+        if (p < minPrice || p > maxPrice)
+            return false;
+        return category == ANY_CATEGORY || categoryId[ordinal] == category;
+    }
+
+    /**
+     * All products passing the price range and category filter.
+     * Only the price slice or the category bitmap (whichever is smaller) is
+     * visited.
+     */
+    public BitSet filter(double minPrice, double maxPrice, short category) {
+        int n = price.length;
+        BitSet result = new BitSet(n);
+        if (category == NO_CATEGORY)
+            return result;
+
+        // Price slice [from, to) of priceOrder
+        int from = firstPriceAtLeast(minPrice);
+        int to = Math.max(from, firstPriceAbove(maxPrice));
+        CompressedBitmap categoryBitmap = category == ANY_CATEGORY ? null : categoryBitmaps[category];
+
+        if (to - from == n) {
+            // Price range covers the whole catalogue
+            if (categoryBitmap == null)
+                result.set(0, n);
+            else
+                categoryBitmap.orInto(result);
+        } else if (categoryBitmap == null || to - from <= categoryBitmap.cardinality()) {
+            for (int r = from; r < to; r++) {
+                int i = priceOrder[r];
+                if (categoryBitmap == null || categoryId[i] == category)
+                    result.set(i);
+            }
+        } else {
+            categoryBitmap.forEach(i -> {
+                if (price[i] >= minPrice && price[i] <= maxPrice)
+                    result.set(i);
+            });
+        }
+        return result;
+    }
+
+    /** Index of the first price-sorted entry with price >= value. */
+    private int firstPriceAtLeast(double value) {
+        int lo = 0, hi = sortedPrices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedPrices[mid] < value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /** Index of the first price-sorted entry with price > value. */
+    private int firstPriceAbove(double value) {
+        int lo = 0, hi = sortedPrices.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sortedPrices[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    public int size() {
+        return price.length;
+    }
+
+    public double getPrice(int ordinal) {
+        return price[ordinal];
+    }
+
+    public float getAvgRating(int ordinal) {
+        return avgRating[ordinal];
+    }
+
+    public int getReviewCount(int ordinal) {
+        return reviewCount[ordinal];
+    }
+
+    public float getSentiment(int ordinal) {
+        return sentiment[ordinal];
+    }
+
+    public short getCategoryId(int ordinal) {
+        return categoryId[ordinal];
+    }
+
+    public String getCategoryName(short id) {
+        return id >= 0 && id < categoryNames.length ? categoryNames[id] : null;
+    }
+
+    public int getCategoryCount() {
+        return categoryNames.length;
+    }
+
+    /**
+     * Bytes held by the category bitmaps.
+     */
+    public long categoryBitmapBytes() {
+        long bytes = 0;
+        for (CompressedBitmap bitmap : categoryBitmaps)
+            bytes += bitmap.sizeBytes();
+        return bytes;
+    }
+}
@@ -0,0 +1,153 @@
+package com.recommendation.model;
+
+/**
+ * Rows of (id, weight) entries with the weights stored at reduced precision
+ * (see VectorPrecision), packed into flat on-heap arrays. Used for inverted
+ * index postings (row = term, id = product, scales kept by the index per
+ * product). Product vectors are not quantized: only the postings are scored,
+ * and the engine re-weights exact vectors from the term ids when needed.
+ *
+ * A weight is stored as a code: weight / scale, rounded to a signed byte
+ * (INT8) or a half-precision float (FLOAT16, scale 1). Codes are read back
+ * as float, so scoring loops can accumulate code * query weight in float and
+ * apply the scale once per product.
+ */
+public final class QuantizedVectors {
+
+    private final VectorPrecision precision;
+    private final int[] starts; // Entries of row r are [starts[r], starts[r + 1])
+    private final int[] ids;
+    private final byte[] int8Codes; // INT8 only
+    private final short[] float16Codes; // FLOAT16 only
+
+    /**
+     * Allocate rows of the given lengths, filled with
+     * {@link #set(int, int, double)}.
+     */
+    QuantizedVectors(int[] rowLengths, VectorPrecision precision) {
+        if (precision == VectorPrecision.DOUBLE)
+            throw new IllegalArgumentException("Full precision vectors are not quantized");
+        this.precision = precision;
+        this.starts = new int[rowLengths.length + 1];
+        for (int r = 0; r < rowLengths.length; r++)
+            starts[r + 1] = starts[r] + rowLengths[r];
+        int entries = starts[rowLengths.length];
+        this.ids = new int[entries];
+        this.int8Codes = precision == VectorPrecision.INT8 ? new byte[entries] : null;
+        this.float16Codes = precision == VectorPrecision.FLOAT16 ? new short[entries] : null;
+    }
+
+    /**
+     * @param code Weight divided by its scale.
+     */
+    void set(int entry, int id, double code) {
+        ids[entry] = id;
+        if (int8Codes != null)
+            int8Codes[entry] = (byte) Math.max(-127, Math.min(127, Math.round(code)));
+        else
+            float16Codes[entry] = toFloat16((float) code);
+    }
+
+    public VectorPrecision getPrecision() {
+        return precision;
+    }
+
+    public int rowCount() {
+        return starts.length - 1;
+    }
+
+    /** Position of the first entry of a row. */
+    public int start(int row) {
+        return starts[row];
+    }
+
+    /** Position after the last entry of a row. */
+    public int end(int row) {
+        return starts[row + 1];
+    }
+
+    public int id(int entry) {
+        return ids[entry];
+    }
+
+    /**
+     * Stored code of an entry (weight = code * scale).
+     */
+    public float code(int entry) {
+        return int8Codes != null ? int8Codes[entry] : fromFloat16(float16Codes[entry]);
+    }
+
+    /**
+     * Bytes held by the arrays.
+     */
+    public long sizeBytes() {
+        return 4L * starts.length + (4L + precision.getBytesPerWeight()) * ids.length;
+    }
+
+    /**
+     * Vector as it reads back after quantization, with the scale
+     * {@link VectorPrecision#scaleOf(SparseVector)} gives it.
+     */
+    static SparseVector roundTrip(SparseVector v, VectorPrecision precision, float scale) {
+        if (precision == VectorPrecision.DOUBLE)
+            return v;
+        int[] indices = new int[v.size()];
+        double[] values = new double[v.size()];
+        for (int i = 0; i < v.size(); i++) {
+            indices[i] = v.indexAt(i);
+            double code = v.valueAt(i) / scale;
+            float stored = precision == VectorPrecision.INT8 ? Math.max(-127, Math.min(127, Math.round(code)))
+                    : fromFloat16(toFloat16((float) code));
+            values[i] = (double) stored * scale;
+        }
+        return new SparseVector(v.getDimension(), indices, values);
+    }
+
+    // --- IEEE 754 half precision (Float.floatToFloat16 needs Java 20) ---
+
+    /**
+     * Nearest half-precision value (ties to even); overflows to infinity.
+     */
+    static short toFloat16(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+        int mantissa = bits & 0x7fffff;
+        if (exponent == 0xff - 127 + 15) // NaN or infinity
+            return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+        if (exponent >= 0x1f)
+            return (short) (sign | 0x7c00);
+        if (exponent <= 0) {
+            // Subnormal half (or zero): shift the implicit bit in
+            if (exponent < -10)
+                return (short) sign;
+            return (short) (sign | roundShift(mantissa | 0x800000, 14 - exponent));
+        }
+        // A carry out of the mantissa correctly bumps the exponent
+        return (short) (sign | roundShift((exponent << 23) | mantissa, 13));
+    }
+
+    static float fromFloat16(short half) {
+        int bits = half & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1f;
+        int mantissa = bits & 0x3ff;
+        if (exponent == 0x1f)
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+        if (exponent == 0) {
+            float subnormal = mantissa * 0x1p-24f;
+            return sign != 0 ? -subnormal : subnormal;
+        }
+        return Float.intBitsToFloat(sign | ((exponent + 127 - 15) << 23) | (mantissa << 13));
+    }
+
+    // value >> shift, rounded to nearest even
+    private static int roundShift(int value, int shift) {
+        int result = value >>> shift;
+        int remainder = value & ((1 << shift) - 1);
+        int half = 1 << (shift - 1);
+        if (remainder > half || (remainder == half && (result & 1) != 0))
+            result++;
+        return result;
+    }
+}
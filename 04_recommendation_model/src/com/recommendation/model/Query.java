@@ -0,0 +1,66 @@
+package com.recommendation.model;
+
+import java.util.Objects;
+
+/**
+ * One recommendation request (the parameters of getRecommendations), used by
+ * the batch API. Two queries are equal when all their parameters are.
+ */
+public final class Query {
+
+    private final String text;
+    private final double minPrice;
+    private final double maxPrice;
+    private final String category;
+    private final int maxResults;
+
+    public Query(String text, double minPrice, double maxPrice, String category, int maxResults) {
+        this.text = text;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.category = category;
+        this.maxResults = maxResults;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public double getMinPrice() {
+        return minPrice;
+    }
+
+    public double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public int getMaxResults() {
+        return maxResults;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof Query))
+            return false;
+        Query q = (Query) o;
+        return Double.compare(minPrice, q.minPrice) == 0 && Double.compare(maxPrice, q.maxPrice) == 0
+                && maxResults == q.maxResults && Objects.equals(text, q.text)
+                && Objects.equals(category, q.category);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(text, minPrice, maxPrice, category, maxResults);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Query[\"%s\", %.2f-%.2f, %s, top %d]", text, minPrice, maxPrice, category, maxResults);
+    }
+}
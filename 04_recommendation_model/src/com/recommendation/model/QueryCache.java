@@ -0,0 +1,196 @@
+package com.recommendation.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * LRU cache of recommendation results with a memory budget.
+ *
+ * Entries are keyed by the analyzed query, the resolved category, the price
+ * bounds, the number of results and the model version, so a retrained model
+ * never serves results computed by the previous one.
+ *
+ * Callers may re-sort and re-rank the lists they get (the UI does), so the
+ * cache stores its own copies and hands out fresh ones.
+ */
+public class QueryCache {
+
+    public static final long DEFAULT_BUDGET_BYTES = 8L * 1024 * 1024;
+
+    // Rough per-object sizes used for the memory estimate
+    private static final long ENTRY_OVERHEAD_BYTES = 128; // Map entry, key object, list
+    private static final long RESULT_BYTES = 96; // RecommendationResult shell (strings are shared)
+
+    private final LinkedHashMap<Key, CachedResults> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long budgetBytes;
+    private long usedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public QueryCache() {
+        this(DEFAULT_BUDGET_BYTES);
+    }
+
+    public QueryCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Look up cached results.
+     *
+     * @return A fresh copy of the cached results, or null on a miss.
+     */
+    public synchronized List<RecommendationResult> get(Key key) {
+        CachedResults cached = entries.get(key);
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copyOf(cached.results);
+    }
+
+    /**
+     * Store results (a private copy is kept).
+     */
+    public synchronized void put(Key key, List<RecommendationResult> results) {
+        CachedResults cached = new CachedResults(copyOf(results), estimateBytes(key, results));
+        if (cached.bytes > budgetBytes)
+            return; // Would evict everything else for a single entry
+
+        CachedResults previous = entries.put(key, cached);
+        if (previous != null)
+            usedBytes -= previous.bytes;
+        usedBytes += cached.bytes;
+        evictToBudget();
+    }
+
+    /**
+     * Drop all entries (statistics are kept).
+     */
+    public synchronized void invalidate() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evictToBudget();
+    }
+
+    private void evictToBudget() {
+        Iterator<Map.Entry<Key, CachedResults>> it = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            usedBytes -= it.next().getValue().bytes;
+            it.remove();
+            evictions++;
+        }
+    }
+
+    private static long estimateBytes(Key key, List<RecommendationResult> results) {
+        return ENTRY_OVERHEAD_BYTES + 2L * key.query.length() + RESULT_BYTES * results.size();
+    }
+
+    private static List<RecommendationResult> copyOf(List<RecommendationResult> results) {
+        List<RecommendationResult> copy = new ArrayList<>(results.size());
+        for (RecommendationResult r : results) {
+            copy.add(new RecommendationResult(r));
+        }
+        return copy;
+    }
+
+    // --- Statistics ---
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getBudgetBytes() {
+        return budgetBytes;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("QueryCache[entries=%d, used=%d/%d bytes, hits=%d, misses=%d, evictions=%d]",
+                entries.size(), usedBytes, budgetBytes, hits, misses, evictions);
+    }
+
+    private static class CachedResults {
+        final List<RecommendationResult> results;
+        final long bytes;
+
+        CachedResults(List<RecommendationResult> results, long bytes) {
+            this.results = results;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Cache key. The query is kept as scoring sees it: its normalized text
+     * (see Analyzer.normalize, used by the title and category bonuses) and its
+     * tokens (keywords and TF-IDF terms). Case, accent, whitespace and
+     * punctuation variants that leave both unchanged share an entry; stop
+     * words still count, since the normalized text keeps them.
+     */
+    public static final class Key {
+        private final String query;
+        private final short category;
+        private final double minPrice;
+        private final double maxPrice;
+        private final int maxResults;
+        private final long modelVersion;
+
+        public Key(String query, short category, double minPrice, double maxPrice, int maxResults,
+                long modelVersion) {
+            this.query = Analyzer.normalize(query) + '\n' + String.join(" ", Analyzer.get().tokens(query));
+            this.category = category;
+            this.minPrice = minPrice;
+            this.maxPrice = maxPrice;
+            this.maxResults = maxResults;
+            this.modelVersion = modelVersion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return category == k.category && Double.compare(minPrice, k.minPrice) == 0
+                    && Double.compare(maxPrice, k.maxPrice) == 0 && maxResults == k.maxResults
+                    && modelVersion == k.modelVersion && query.equals(k.query);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(query, category, minPrice, maxPrice, maxResults, modelVersion);
+        }
+    }
+}
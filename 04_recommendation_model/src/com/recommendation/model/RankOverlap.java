@@ -0,0 +1,69 @@
+package com.recommendation.model;
+
+/**
+ * Result of RecommendationEngine.checkPrecision: how much the top-k results
+ * at a reduced vector precision agree with full precision.
+ *
+ * The overlap of one query is |top-k at full precision ∩ top-k at the reduced
+ * precision| divided by the size of the longer list (k, unless filters leave
+ * fewer results; 1 when both are empty), regardless of order within the top
+ * k.
+ */
+public final class RankOverlap {
+
+    private final VectorPrecision precision;
+    private final int k;
+    private final int queryCount;
+    private final double meanOverlap;
+    private final double minOverlap;
+    private final long fullPrecisionBytes; // Postings at full precision
+    private final long reducedPrecisionBytes; // Postings at the checked precision
+
+    RankOverlap(VectorPrecision precision, int k, int queryCount, double meanOverlap, double minOverlap,
+            long fullPrecisionBytes, long reducedPrecisionBytes) {
+        this.precision = precision;
+        this.k = k;
+        this.queryCount = queryCount;
+        this.meanOverlap = meanOverlap;
+        this.minOverlap = minOverlap;
+        this.fullPrecisionBytes = fullPrecisionBytes;
+        this.reducedPrecisionBytes = reducedPrecisionBytes;
+    }
+
+    public VectorPrecision getPrecision() {
+        return precision;
+    }
+
+    public int getK() {
+        return k;
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    /** Average overlap@k over the queries, in [0, 1]. */
+    public double getMeanOverlap() {
+        return meanOverlap;
+    }
+
+    /** Worst overlap@k of a single query. */
+    public double getMinOverlap() {
+        return minOverlap;
+    }
+
+    public long getFullPrecisionBytes() {
+        return fullPrecisionBytes;
+    }
+
+    public long getReducedPrecisionBytes() {
+        return reducedPrecisionBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s overlap@%d: mean %.3f, min %.3f over %d queries; postings %d KB -> %d KB",
+                precision, k, meanOverlap, minOverlap, queryCount, fullPrecisionBytes / 1024,
+                reducedPrecisionBytes / 1024);
+    }
+}
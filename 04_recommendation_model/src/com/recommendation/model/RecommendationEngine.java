@@ -1,7 +1,20 @@
 package com.recommendation.model;
 
 import com.recommendation.preprocessing.Product;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Main recommendation engine implementation.
@@ -9,15 +22,51 @@ import java.util.*;
  */
 public class RecommendationEngine extends AbstractRecommendationEngine {
 
-    private DatasetStats stats;
+    private volatile DatasetStats stats;
 
     // ML Components
     private TFIDFVectorizer vectorizer;
+    private int hashBits; // Feature hashing vectorizer (see TFIDFVectorizer), 0 for an exact vocabulary
     private NaiveBayesClassifier sentimentClassifier; // UPDATED: AI Classifier
-    private Map<String, double[]> productVectors;
-    private Map<String, Double> sentimentCache;
+    private SparseVector[] productVectors; // Indexed by product ordinal (null when off-heap or quantized, see vectors())
+    private boolean offHeapVectors = false;
+    private VectorPrecision vectorPrecision = VectorPrecision.DOUBLE;
+    private File arenaDir; // Memory-mapped arena files, null for direct memory
+    private AnalyzedProduct[] analyzedProducts; // Indexed by product ordinal
+    private InvertedIndex invertedIndex;
+    private Scorer scorer; // Text similarity (see ScoringModel)
+    private ScoringModel scoringModel = ScoringModel.COSINE;
+    private KeywordIndex keywordIndex;
+    private volatile AutocompleteIndex autocompleteIndex = AutocompleteIndex.of(List.of()); // Read without the lock
+    private ProductColumns columns; // Price, rating, reviews, sentiment, category per ordinal
+    private float[] staticScores; // Query-independent part of the composite score (score = sim * weight + static)
+    private int[] staticOrder; // Product ordinals by descending static score
+    private int[] staticRank; // Position of each product in staticOrder
+    private double[] sentiments; // Average review sentiment per ordinal, kept for incremental updates
     private boolean modelReady = false;
 
+    // Catalogue updates (add/update/remove) take the write lock, queries the read lock
+    private final ReentrantReadWriteLock modelLock = new ReentrantReadWriteLock();
+    private volatile double idfDriftThreshold = DEFAULT_IDF_DRIFT_THRESHOLD;
+    private final AtomicBoolean reweightScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean autocompleteScheduled = new AtomicBoolean(false);
+    private ExecutorService backgroundExecutor; // Reweights and autocomplete rebuilds, created on first use
+
+    // Query result cache, invalidated by bumping the model version on retrain
+    private final QueryCache queryCache = new QueryCache();
+    private volatile long modelVersion = 0;
+
+    // Parallel scoring (shards scored on a dedicated pool, merged top-k)
+    private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+    private volatile int parallelCutoff = DEFAULT_PARALLEL_CUTOFF;
+    private ForkJoinPool scoringPool; // Created on first parallel query
+
+    // Staged ranking: cheap recall of the best candidates, full scoring of those only
+    private volatile int recallSize = DEFAULT_RECALL_SIZE;
+    private volatile long recallBudgetNanos = 0; // 0 = no budget
+    private volatile long rerankBudgetNanos = 0;
+    private volatile StageTimings lastTimings; // Of the most recently computed query
+
     // Scoring weights (must sum to 1.0)
     private static final double WEIGHT_SIMILARITY = 0.35;
     private static final double WEIGHT_RATING = 0.25;
@@ -25,11 +74,35 @@ public class RecommendationEngine extends AbstractRecommendationEngine {
     private static final double WEIGHT_PRICE = 0.15;
     private static final double WEIGHT_SENTIMENT = 0.10;
 
+    private static final double MIN_SCORE_THRESHOLD = 0.15;
+    private static final double MAX_BONUS = 0.2 + 0.15; // substringBonus + categoryBonus
+    private static final double BOUND_EPSILON = 1e-9; // Guards bounds against rounding
+    private static final int DEFAULT_PARALLEL_CUTOFF = 2048; // Candidates
+    private static final int DEFAULT_RECALL_SIZE = 1000; // Candidates reranked per query
+    private static final int BUDGET_CHECK_INTERVAL = 64; // Candidates between clock reads
+    private static final double DEFAULT_IDF_DRIFT_THRESHOLD = 0.05; // See TFIDFVectorizer.getIdfDrift
+
     public RecommendationEngine(List<Product> products) {
-        super(products); // Use parent constructor
+        this(products, 0, true);
+    }
+
+    /**
+     * @param hashBits Hash words into 2^hashBits TF-IDF dimensions instead of
+     *                 keeping an exact vocabulary (0). Memory for IDF weights
+     *                 and postings then stays fixed as the catalogue grows,
+     *                 and added products never extend the vocabulary.
+     */
+    public RecommendationEngine(List<Product> products, int hashBits) {
+        this(products, hashBits, true);
+    }
+
+    private RecommendationEngine(List<Product> products, int hashBits, boolean train) {
+        super(new ArrayList<>(products)); // Own copy: the catalogue can be updated in place
+        this.hashBits = hashBits;
         this.stats = new DatasetStats(products);
         this.sentimentClassifier = new NaiveBayesClassifier(); // Init AI
-        trainModel();
+        if (train)
+            trainModel();
     }
 
     @Override
@@ -37,188 +110,1175 @@ public class RecommendationEngine extends AbstractRecommendationEngine {
         if (allProducts == null || allProducts.isEmpty())
             return;
         System.out.println("Initializing Machine Learning Models (TF-IDF + Naive Bayes)...");
-        this.vectorizer = new TFIDFVectorizer();
-        this.productVectors = new HashMap<>();
-        this.sentimentCache = new HashMap<>();
+        this.vectorizer = new TFIDFVectorizer(hashBits);
+        SparseVector[] vectors = new SparseVector[allProducts.size()];
+        this.sentiments = new double[allProducts.size()];
 
         List<String> corpus = new ArrayList<>();
         for (Product p : allProducts) {
-            corpus.add(p.getTitle() + " " + p.getDescription());
+            corpus.add(textOf(p));
         }
 
         vectorizer.fit(corpus);
 
         // Vectorization & Sentiment Analysis Loop
         System.out.println("Running AI Sentiment Analysis on Reviews...");
-        for (Product p : allProducts) {
-            // 1. Vectorize Content
-            productVectors.put(p.getId(), vectorizer.transform(p.getTitle() + " " + p.getDescription()));
+        this.analyzedProducts = new AnalyzedProduct[allProducts.size()];
+        for (int i = 0; i < allProducts.size(); i++) {
+            Product p = allProducts.get(i);
+            // 1. Analyze and Vectorize Content
+            AnalyzedProduct analyzed = analyze(p, vectorizer.toTermIds(corpus.get(i)));
+            analyzedProducts[i] = analyzed;
+            vectors[i] = vectorizer.transform(analyzed.getTermIds());
 
             // 2. Analyze Sentiment (Probabilistic)
-            double totalSentiment = 0.0;
-            if (p.getReviews().isEmpty()) {
-                totalSentiment = 0.0;
-            } else {
-                for (com.recommendation.preprocessing.Review r : p.getReviews()) {
-                    totalSentiment += sentimentClassifier.predict(r.getBody());
-                }
-                totalSentiment /= p.getReviews().size(); // Average Probability
-            }
-            sentimentCache.put(p.getId(), totalSentiment);
+            sentiments[i] = averageSentiment(p);
         }
+        this.columns = new ProductColumns(allProducts, sentiments);
+
+        // 3. Build search indexes (term -> products)
+        setVectors(vectors);
+        this.keywordIndex = newKeywordIndex();
+
+        // 4. Static scores, used as upper bounds for top-k pruning
+        computeStaticScores();
+        buildAutocomplete(allProducts);
 
         this.modelReady = true;
-        System.out.println("Models trained. TF-IDF Vectors: " + productVectors.size() + ", Sentiment Scores: "
-                + sentimentCache.size());
+        this.modelVersion++;
+        queryCache.invalidate();
+        System.out.println("Models trained. TF-IDF Vectors: " + vectors.length + ", Sentiment Scores: "
+                + sentiments.length + ", Indexed Words: " + keywordIndex.getWordCount());
     }
 
     public List<RecommendationResult> getRecommendations(String query, double minPrice, double maxPrice,
             String category, int maxResults) {
-        List<RecommendationResult> results = new ArrayList<>();
-        if (!modelReady)
+        modelLock.readLock().lock();
+        try {
+            List<RecommendationResult> results = new ArrayList<>();
+            if (!modelReady || maxResults <= 0)
+                return results;
+
+            short categoryFilter = columns.resolveCategory(category);
+            if (categoryFilter == ProductColumns.NO_CATEGORY)
+                return results; // Unknown category: nothing can match
+
+            QueryCache.Key key = new QueryCache.Key(query, categoryFilter, minPrice, maxPrice, maxResults,
+                    modelVersion);
+            List<RecommendationResult> cached = queryCache.get(key);
+            if (cached != null)
+                return cached;
+
+            StageTimings timings = computeRecommendations(query, columns.filter(minPrice, maxPrice, categoryFilter),
+                    new HashMap<>(), maxResults, true, scorer, results);
+            if (!timings.isBudgetExceeded())
+                queryCache.put(key, results);
             return results;
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rank in two stages. Recall expands the keywords against the word index,
+     * accumulates the text similarity over the postings and keeps the
+     * recallSize candidates with the best cheap score (static score plus
+     * weighted similarity). Rerank applies keyword counting, the domain
+     * bonuses and the composite score to those candidates only, so its cost
+     * no longer grows with the number of loosely matching products.
+     *
+     * @param filter     Products passing the price and category filter (not
+     *                   modified, may be shared between queries).
+     * @param matchCache Fuzzy keyword expansions, keyword -> matching products
+     *                   (may be shared between queries).
+     * @param allowParallel Whether large candidate sets may be split across
+     *                   the scoring pool.
+     * @param scorer     Text similarity (the model's own, or a cosine scorer
+     *                   at another precision, see checkPrecision).
+     * @param results    Receives the results, best first.
+     */
+    private StageTimings computeRecommendations(String query, BitSet filter, Map<String, BitSet> matchCache,
+            int maxResults, boolean allowParallel, Scorer scorer, List<RecommendationResult> results) {
+        long recallStart = System.nanoTime();
+        long recallBudget = recallBudgetNanos, rerankBudget = rerankBudgetNanos;
+
+        int[] queryTerms = vectorizer.toTermIds(query);
+        SparseVector queryVector = vectorizer.transform(queryTerms);
+        List<String> queryKeywords = Analyzer.get().tokens(query);
+        String normalizedQuery = Analyzer.normalize(query);
+
+        // 1. Candidate generation: products matching at least one keyword.
+        // Fuzzy matching is expanded once per keyword against the word index.
+        List<BitSet> keywordMatches = new ArrayList<>();
+        for (String keyword : queryKeywords) {
+            int maxEdits = keyword.length() <= 6 ? 1 : 2;
+            keywordMatches.add(matchCache.computeIfAbsent(keyword, k -> keywordIndex.match(k, maxEdits)));
+        }
+        boolean hasValidKeywords = !keywordMatches.isEmpty();
+
+        // Filter bitmap (category bitmap intersected with the price slice)
+        BitSet candidates = (BitSet) filter.clone();
+        if (hasValidKeywords) {
+            BitSet matching = new BitSet(allProducts.size());
+            for (BitSet matches : keywordMatches)
+                matching.or(matches);
+            candidates.and(matching);
+        }
+
+        SimilarityAccumulator similarities = SimilarityAccumulator.acquire(allProducts.size());
+        try {
+            // 2. Similarity accumulated over the query terms' posting lists (sparse:
+            // only the products in those lists are touched)
+            scorer.similarities(queryVector, queryTerms, similarities);
+
+            // 3. Visit candidates by descending static score so the loops can stop
+            // once no remaining product can reach the current k-th score.
+            int[] order = new int[candidates.cardinality()];
+            int n = 0;
+            for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1))
+                order[n++] = staticRank[i];
+            Arrays.sort(order);
+
+            double similarityBound = scorer.upperBound(queryVector, queryTerms);
+            double maxMatchBonus = !queryKeywords.isEmpty()
+                    ? (double) keywordMatches.size() / queryKeywords.size() * 0.15
+                    : 0.0;
+            QueryContext ctx = new QueryContext(normalizedQuery, queryKeywords.size(), keywordMatches, similarities,
+                    Math.min(1.0, similarityBound + MAX_BONUS + maxMatchBonus));
 
-        List<Product> filtered = filterProducts(minPrice, maxPrice, category);
-        if (filtered.isEmpty())
+            // 4. Recall cut: the best candidates by cheap score go on to the rerank
+            int candidateCount = order.length;
+            int size = Math.max(recallSize, maxResults);
+            if (order.length > size)
+                order = recall(ctx, order, size, similarityBound, recallBudget > 0 ? recallStart + recallBudget : 0);
+            long rerankStart = System.nanoTime();
+
+            // 5. Rerank the recalled candidates
+            ctx.rerankDeadline = rerankBudget > 0 ? rerankStart + rerankBudget : 0;
+            TopKHeap topK; // (product ordinal, score), worst on top
+            if (allowParallel && parallelism > 1 && order.length >= parallelCutoff) {
+                topK = scoreParallel(ctx, order, maxResults);
+            } else {
+                topK = new TopKHeap(maxResults);
+                scoreShard(ctx, order, 0, 1, topK);
+            }
+
+            // 6. Materialise only the final k entries (ties keep catalogue order)
+            double[] topScores = new double[topK.size()];
+            int[] topOrdinals = topK.drainOrdinals(topScores);
+            for (int k = 0; k < topOrdinals.length; k++) {
+                RecommendationResult result = toResult(allProducts.get(topOrdinals[k]), topScores[k]);
+                result.setRank(k + 1);
+                results.add(result);
+            }
+
+            StageTimings timings = new StageTimings(candidateCount, order.length, rerankStart - recallStart,
+                    System.nanoTime() - rerankStart, ctx.budgetExceeded);
+            lastTimings = timings;
+            return timings;
+        } finally {
+            similarities.release(); // Results hold no reference to it
+        }
+    }
+
+    /**
+     * Keep the candidates with the best cheap score: static score plus
+     * weighted similarity, without the bonuses and keyword counting of the
+     * rerank. Candidates are visited by descending static score; the budget
+     * only stops the scan once size candidates are kept, which are then the
+     * best seen so far.
+     *
+     * @param order    Static ranks of the candidates, ascending.
+     * @param deadline System.nanoTime() to stop at, 0 for none.
+     * @return Static ranks of the kept candidates, ascending.
+     */
+    private int[] recall(QueryContext ctx, int[] order, int size, double similarityBound, long deadline) {
+        TopKHeap recalled = new TopKHeap(size);
+        for (int j = 0; j < order.length; j++) {
+            if (deadline != 0 && j % BUDGET_CHECK_INTERVAL == 0 && recalled.isFull()
+                    && System.nanoTime() - deadline > 0) {
+                ctx.budgetExceeded = true;
+                break;
+            }
+            int i = staticOrder[order[j]];
+            double minScore = recalled.minScore();
+            if (recalled.isFull() && staticScores[i] + similarityBound * WEIGHT_SIMILARITY + BOUND_EPSILON < minScore)
+                break;
+            recalled.offer(i, staticScores[i] + ctx.similarities.get(i) * WEIGHT_SIMILARITY);
+        }
+
+        int[] kept = recalled.drainOrdinals(new double[recalled.size()]);
+        for (int k = 0; k < kept.length; k++)
+            kept[k] = staticRank[kept[k]];
+        Arrays.sort(kept);
+        return kept;
+    }
+
+    /**
+     * Batch version of getRecommendations, tuned for throughput.
+     *
+     * Identical queries are computed once and cached results are reused.
+     * Queries sharing a filter share one filter bitmap, and fuzzy keyword
+     * expansions are shared across the whole batch. Distinct queries are
+     * then scored in parallel on the scoring pool, one query per task.
+     */
+    @Override
+    public List<List<RecommendationResult>> getRecommendationsBatch(List<Query> queries) {
+        modelLock.readLock().lock();
+        try {
+            return computeBatch(queries);
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    private List<List<RecommendationResult>> computeBatch(List<Query> queries) {
+        List<List<RecommendationResult>> results = new ArrayList<>(queries.size());
+        if (!modelReady) {
+            for (int q = 0; q < queries.size(); q++)
+                results.add(new ArrayList<>());
             return results;
+        }
+        long version = modelVersion;
 
-        double[] queryVector = vectorizer.transform(query);
-        String[] queryKeywords = query.toLowerCase().split("\\s+");
+        // 1. Dedupe (by cache key) and look up the cache
+        Map<QueryCache.Key, List<RecommendationResult>> distinct = new HashMap<>();
+        Map<QueryCache.Key, Query> pending = new LinkedHashMap<>();
+        QueryCache.Key[] keys = new QueryCache.Key[queries.size()];
+        for (int q = 0; q < queries.size(); q++) {
+            Query query = queries.get(q);
+            short categoryFilter = columns.resolveCategory(query.getCategory());
+            if (query.getMaxResults() <= 0 || categoryFilter == ProductColumns.NO_CATEGORY)
+                continue; // Empty result, see getRecommendations
+            QueryCache.Key key = new QueryCache.Key(query.getText(), categoryFilter, query.getMinPrice(),
+                    query.getMaxPrice(), query.getMaxResults(), version);
+            keys[q] = key;
+            if (distinct.containsKey(key) || pending.containsKey(key))
+                continue;
+            List<RecommendationResult> cached = queryCache.get(key);
+            if (cached != null)
+                distinct.put(key, cached);
+            else
+                pending.put(key, query);
+        }
 
-        // Create a list of scored items using our custom Generic class
-        List<ScoredItem<Product>> scoredItems = new ArrayList<>();
+        // 2. One filter bitmap per distinct (category, price range)
+        Map<List<Object>, BitSet> filters = new HashMap<>();
+        Map<String, BitSet> matchCache = new ConcurrentHashMap<>();
+        Scorer batchScorer = scorer;
+        List<QueryCache.Key> pendingKeys = new ArrayList<>(pending.keySet());
+        List<List<RecommendationResult>> computed = new ArrayList<>();
+        List<Callable<StageTimings>> tasks = new ArrayList<>();
+        for (QueryCache.Key key : pendingKeys) {
+            Query query = pending.get(key);
+            short categoryFilter = columns.resolveCategory(query.getCategory());
+            BitSet filter = filters.computeIfAbsent(
+                    List.of(categoryFilter, query.getMinPrice(), query.getMaxPrice()),
+                    f -> columns.filter(query.getMinPrice(), query.getMaxPrice(), categoryFilter));
+            List<RecommendationResult> queryResults = new ArrayList<>();
+            computed.add(queryResults);
+            tasks.add(() -> computeRecommendations(query.getText(), filter, matchCache, query.getMaxResults(),
+                    false, batchScorer, queryResults));
+        }
 
-        for (Product product : filtered) {
-            double[] pVector = productVectors.get(product.getId());
-            double similarityScore = calculateCosineSimilarity(queryVector, pVector);
+        // 3. Score distinct queries in parallel
+        List<StageTimings> timings = runAll(tasks);
+        for (int t = 0; t < pendingKeys.size(); t++) {
+            QueryCache.Key key = pendingKeys.get(t);
+            if (!timings.get(t).isBudgetExceeded())
+                queryCache.put(key, computed.get(t));
+            distinct.put(key, computed.get(t));
+        }
 
-            // Domain bonuses
-            similarityScore += substringBonus(query, product.getTitle());
-            similarityScore += categoryBonus(query, product.getCategory());
+        // 4. Results in input order; repeated queries get their own copies
+        Set<QueryCache.Key> handedOut = new HashSet<>();
+        for (QueryCache.Key key : keys) {
+            if (key == null)
+                results.add(new ArrayList<>());
+            else if (handedOut.add(key))
+                results.add(distinct.get(key));
+            else
+                results.add(copyOf(distinct.get(key)));
+        }
+        return results;
+    }
 
-            String productText = (product.getTitle() + " " + product.getDescription()).toLowerCase();
-            int matchCount = 0;
-            boolean hasValidKeywords = false;
-            for (String keyword : queryKeywords) {
-                if (keyword.length() > 2) {
-                    hasValidKeywords = true;
-                    int maxEdits = keyword.length() <= 6 ? 1 : 2;
-                    if (fuzzyContains(productText, keyword, maxEdits)) {
-                        matchCount++;
-                    }
+    private <T> List<T> runAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        if (parallelism == 1 || tasks.size() == 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException("Batch query failed", e);
                 }
             }
+            return results;
+        }
+        for (Future<T> future : getScoringPool().invokeAll(tasks)) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scoring", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Batch query failed", e.getCause());
+            }
+        }
+        return results;
+    }
 
-            if (hasValidKeywords && matchCount == 0)
-                continue;
+    // --- Snapshot (see ModelSnapshot) ---
+
+    /**
+     * Write the trained model to a snapshot file: products, vocabulary and IDF
+     * weights, term ids and vectors, sentiment and static scores, and the
+     * keyword index. Structures that are quick to derive (inverted index,
+     * filter columns) are rebuilt on load.
+     *
+     * @param sourceHash Hash of the data the model was trained on, see
+     *                   {@link ModelSnapshot#hashSources(String...)}.
+     */
+    public void saveSnapshot(File file, String sourceHash) throws IOException {
+        modelLock.readLock().lock();
+        try {
+            if (!modelReady)
+                throw new IllegalStateException("Model has not been trained");
+            ModelSnapshot.write(file, sourceHash, out -> {
+                ModelSnapshot.writeProducts(out, allProducts);
+                vectorizer.writeTo(out);
+                SparseVector[] vectors = vectors();
+                for (int i = 0; i < vectors.length; i++) {
+                    ModelSnapshot.writeInts(out, analyzedProducts[i].getTermIds());
+                    ModelSnapshot.writeVector(out, vectors[i]);
+                }
+                ModelSnapshot.writeDoubles(out, sentiments);
+                ModelSnapshot.writeFloats(out, staticScores);
+                ModelSnapshot.writeInts(out, staticOrder);
+                if (hashBits > 0)
+                    ModelSnapshot.writeTerms(out, keywordIndex.terms()); // Not in the hashing vectorizer
+                keywordIndex.writeTo(out);
+            });
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Load an engine from a snapshot instead of retraining.
+     *
+     * @return The engine, or null if the snapshot is missing, was built from
+     *         other source data or by another format version, or is corrupt.
+     */
+    public static RecommendationEngine loadSnapshot(File file, String sourceHash) {
+        return ModelSnapshot.read(file, sourceHash, RecommendationEngine::readSnapshot);
+    }
+
+    private static RecommendationEngine readSnapshot(DataInputStream in) throws IOException {
+        RecommendationEngine engine = new RecommendationEngine(ModelSnapshot.readProducts(in), 0, false);
+        int n = engine.allProducts.size();
+        engine.vectorizer = TFIDFVectorizer.readFrom(in);
+        engine.hashBits = engine.vectorizer.getHashBits();
+        engine.analyzedProducts = new AnalyzedProduct[n];
+        SparseVector[] vectors = new SparseVector[n];
+        for (int i = 0; i < n; i++) {
+            engine.analyzedProducts[i] = engine.analyze(engine.allProducts.get(i), ModelSnapshot.readInts(in));
+            vectors[i] = ModelSnapshot.readVector(in);
+        }
+        engine.sentiments = ModelSnapshot.readDoubles(in);
+        engine.staticScores = ModelSnapshot.readFloats(in);
+        engine.setStaticOrder(ModelSnapshot.readInts(in));
+        TermDictionary keywordTerms = engine.hashBits > 0 ? ModelSnapshot.readTerms(in) : engine.vectorizer.terms();
+        engine.keywordIndex = KeywordIndex.readFrom(in, keywordTerms);
+
+        engine.columns = new ProductColumns(engine.allProducts, engine.sentiments);
+        engine.setVectors(vectors);
+        engine.buildAutocomplete(engine.allProducts);
+        engine.modelReady = true;
+        engine.modelVersion++;
+        return engine;
+    }
+
+    // --- Incremental catalogue updates ---
 
-            if (queryKeywords.length > 0 && matchCount > 0) {
-                similarityScore += (double) matchCount / queryKeywords.length * 0.15;
+    /**
+     * Add a product without retraining. Its words extend the vocabulary and
+     * document frequencies; the other products keep their vectors until the
+     * IDF weights are refreshed (see {@link #reweight()}).
+     */
+    public void addProduct(Product product) {
+        modelLock.writeLock().lock();
+        try {
+            allProducts.add(product);
+            if (!modelReady) {
+                trainModel(); // First product of an empty catalogue
+                catalogueChanged(true);
+                return;
             }
+            int ordinal = allProducts.size() - 1;
+            SparseVector[] vectors = vectorsToPatch(); // Before the new product's terms
+            if (vectors != null)
+                vectors = Arrays.copyOf(vectors, ordinal + 1);
+            analyzedProducts = Arrays.copyOf(analyzedProducts, ordinal + 1);
+            sentiments = Arrays.copyOf(sentiments, ordinal + 1);
 
-            similarityScore = Math.min(1.0, similarityScore);
+            int[] termIds = vectorizer.addDocument(textOf(product));
+            analyzedProducts[ordinal] = analyze(product, termIds);
+            SparseVector vector = vectorizer.transform(termIds);
+            if (vectors != null)
+                vectors[ordinal] = vector;
+            sentiments[ordinal] = averageSentiment(product);
+            keywordIndex = keywordIndex.withDocument(ordinal, null,
+                    keywordIds(product, termIds, keywordIndex.terms()));
+            updateVectors(vectors, ordinal, null, vector);
+            updateColumns(ordinal, false);
+            catalogueChanged(true);
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
 
-            double finalScore = calculateCompositeScore(product, similarityScore);
+    /**
+     * Replace the product with the same id (for example after a price change
+     * or a new review). Text is re-analyzed only if the title, description or
+     * category changed; the sentiment of this product's reviews is always
+     * recomputed.
+     *
+     * @return false if no product has this id.
+     */
+    public boolean updateProduct(Product product) {
+        modelLock.writeLock().lock();
+        try {
+            int ordinal = indexOf(product.getId());
+            if (ordinal < 0)
+                return false;
+            Product previousProduct = allProducts.set(ordinal, product);
 
-            results.add(new RecommendationResult(
-                    product.getId(), product.getTitle(), product.getPrice(),
-                    product.getImageUrl(), product.getLink(), product.getDescription(),
-                    product.getAvgRating(), product.getReviewCount(), finalScore, product.getCategory()));
+            AnalyzedProduct previous = analyzedProducts[ordinal];
+            String text = textOf(product);
+            boolean textChanged = !text.toLowerCase().equals(textOf(previousProduct).toLowerCase())
+                    || !Analyzer.normalize(product.getTitle()).equals(previous.getNormalizedTitle())
+                    || !Analyzer.normalize(product.getCategory()).equals(previous.getNormalizedCategory());
+            if (textChanged) {
+                SparseVector[] vectors = vectorsToPatch();
+                if (vectors != null)
+                    vectors = vectors.clone();
+                SparseVector previousVector = vectors != null ? vectors[ordinal]
+                        : vectorizer.transform(previous.getTermIds());
+                vectorizer.removeDocument(previous.getTermIds());
+                int[] termIds = vectorizer.addDocument(text);
+                analyzedProducts[ordinal] = analyze(product, termIds);
+                SparseVector vector = vectorizer.transform(termIds);
+                if (vectors != null)
+                    vectors[ordinal] = vector;
+                TermDictionary keywordTerms = keywordIndex.terms();
+                keywordIndex = keywordIndex.withDocument(ordinal,
+                        keywordIds(previousProduct, previous.getTermIds(), keywordTerms),
+                        keywordIds(product, termIds, keywordTerms));
+                updateVectors(vectors, ordinal, previousVector, vector);
+            }
+            sentiments[ordinal] = averageSentiment(product);
+            updateColumns(ordinal, false);
+            catalogueChanged(textChanged);
+            return true;
+        } finally {
+            modelLock.writeLock().unlock();
         }
+    }
 
-        // Rank and Filter
-        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
-        for (int i = 0; i < results.size(); i++)
-            results.get(i).setRank(i + 1);
+    /**
+     * Remove the product with the given id. Later products move down one
+     * ordinal, so catalogue order (the tie-break) is preserved.
+     *
+     * @return false if no product has this id.
+     */
+    public boolean removeProduct(String productId) {
+        modelLock.writeLock().lock();
+        try {
+            int ordinal = indexOf(productId);
+            if (ordinal < 0)
+                return false;
+            SparseVector[] current = vectorsToPatch();
+            SparseVector[] vectors = current != null ? removeAt(current, ordinal) : null;
+            SparseVector previousVector = current != null ? current[ordinal]
+                    : vectorizer.transform(analyzedProducts[ordinal].getTermIds());
+            keywordIndex = keywordIndex.withoutDocument(ordinal,
+                    keywordIds(allProducts.get(ordinal), analyzedProducts[ordinal].getTermIds(), keywordIndex.terms()));
+            vectorizer.removeDocument(analyzedProducts[ordinal].getTermIds());
+            allProducts.remove(ordinal);
+            analyzedProducts = removeAt(analyzedProducts, ordinal);
+            double[] remaining = new double[sentiments.length - 1];
+            System.arraycopy(sentiments, 0, remaining, 0, ordinal);
+            System.arraycopy(sentiments, ordinal + 1, remaining, ordinal, remaining.length - ordinal);
+            sentiments = remaining;
+            updateVectors(vectors, ordinal, previousVector, null);
+            updateColumns(ordinal, true);
+            catalogueChanged(true);
+            return true;
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
 
-        results.removeIf(r -> r.getScore() < 0.15); // MIN_SCORE_THRESHOLD
+    /**
+     * Recompute the IDF weights from the current document frequencies and
+     * re-weight every product vector from its cached term ids (no tokenizing
+     * or sentiment scoring). Runs in the background once the IDF drift passes
+     * the threshold; can also be called directly.
+     */
+    public void reweight() {
+        modelLock.writeLock().lock();
+        try {
+            if (!modelReady)
+                return;
+            vectorizer.reweight();
+            SparseVector[] vectors = new SparseVector[analyzedProducts.length];
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i] = vectorizer.transform(analyzedProducts[i].getTermIds());
+            }
+            setVectors(vectors);
+            modelVersion++;
+            queryCache.invalidate();
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
 
-        return results.size() > maxResults ? results.subList(0, maxResults) : results;
+    /**
+     * Store the product vectors after a change to one product. Full
+     * precision postings, on or off-heap, are patched for that product only
+     * (see InvertedIndex.update); reduced precision postings are rebuilt from
+     * all vectors. BM25F weights depend on average field lengths, so that
+     * scorer is always rebuilt.
+     *
+     * @param vectors  All product vectors after the change, null off-heap.
+     * @param previous The product's vector before the change, null if added.
+     * @param vector   Its vector after the change, null if removed.
+     */
+    private void updateVectors(SparseVector[] vectors, int ordinal, SparseVector previous, SparseVector vector) {
+        if (vectors != null && productVectors == null) {
+            setVectors(vectors); // Reduced precision: built again
+            return;
+        }
+        invertedIndex.update(ordinal, previous, vector, vectorizer.getVocabSize());
+        if (vectors != null)
+            productVectors = vectors;
+        if (scoringModel == ScoringModel.BM25F)
+            scorer = newScorer();
     }
 
-    private double calculateCompositeScore(Product p, double simScore) {
-        double ratingScore = p.getAvgRating() / 5.0;
+    /**
+     * Patch the filter columns, static score and static order of one product
+     * (added, changed or removed), without sorting again.
+     *
+     * @param removed The product was removed: later ordinals move down one.
+     */
+    private void updateColumns(int ordinal, boolean removed) {
+        int[] order = staticOrder;
+        boolean added = ordinal == staticScores.length;
+        if (!added)
+            order = OrdinalOrder.removeAt(order, staticRank[ordinal], removed);
+        if (removed) {
+            columns = columns.without(ordinal);
+            float[] scores = new float[staticScores.length - 1];
+            System.arraycopy(staticScores, 0, scores, 0, ordinal);
+            System.arraycopy(staticScores, ordinal + 1, scores, ordinal, scores.length - ordinal);
+            staticScores = scores;
+        } else {
+            columns = columns.with(ordinal, allProducts.get(ordinal), sentiments[ordinal]);
+            if (added)
+                staticScores = Arrays.copyOf(staticScores, ordinal + 1);
+            staticScores[ordinal] = (float) calculateStaticScore(ordinal);
+            order = OrdinalOrder.insert(order, ordinal, this::compareStatic);
+        }
+        setStaticOrder(order);
+    }
 
-        // Fixed scale normalization (consistent results)
-        double reviewScore = Math.min(p.getReviewCount() / 100.0, 1.0);
-        double priceScore = 1.0 - Math.min(p.getPrice() / 1000.0, 1.0);
+    /**
+     * Bookkeeping after a catalogue change, once the indexes are updated:
+     * stats, caches, and a background reweight if the IDF weights drifted.
+     */
+    private void catalogueChanged(boolean textChanged) {
+        stats = new DatasetStats(allProducts);
+        modelVersion++;
+        queryCache.invalidate();
 
-        // Retrieve cached sentiment (Step 4 - Runtime)
-        double sentimentScore = sentimentCache.getOrDefault(p.getId(), 0.0);
-        // Normalize sentiment (-1 to 1) to (0 to 1) for scoring
-        double normalizedSentiment = (sentimentScore + 1.0) / 2.0;
+        // Typeahead rebuilt in the background (it sorts every title word), the current one served meanwhile
+        if (autocompleteScheduled.compareAndSet(false, true)) {
+            getBackgroundExecutor().execute(() -> {
+                autocompleteScheduled.set(false); // Later changes schedule another rebuild
+                List<Product> products;
+                modelLock.readLock().lock();
+                try {
+                    products = new ArrayList<>(allProducts);
+                } finally {
+                    modelLock.readLock().unlock();
+                }
+                autocompleteIndex = AutocompleteIndex.of(products);
+            });
+        }
 
-        return (simScore * WEIGHT_SIMILARITY) + (ratingScore * WEIGHT_RATING) +
-                (reviewScore * WEIGHT_REVIEWS) + (priceScore * WEIGHT_PRICE) +
-                (normalizedSentiment * WEIGHT_SENTIMENT);
+        if (textChanged && vectorizer.getIdfDrift() >= idfDriftThreshold
+                && reweightScheduled.compareAndSet(false, true)) {
+            getBackgroundExecutor().execute(() -> {
+                reweightScheduled.set(false);
+                reweight();
+            });
+        }
     }
 
-    private List<Product> filterProducts(double minPrice, double maxPrice, String category) {
-        List<Product> filtered = new ArrayList<>();
-        for (Product p : allProducts) {
-            if (p.getPrice() < minPrice || p.getPrice() > maxPrice)
-                continue;
-            if (category != null && !category.isEmpty() && !category.equalsIgnoreCase("All Categories")) {
-                if (!p.getCategory().equalsIgnoreCase(category))
+    // One thread: rebuilds run in the order they were scheduled, so the last one published is the newest
+    private synchronized ExecutorService getBackgroundExecutor() {
+        if (backgroundExecutor == null) {
+            backgroundExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "model-background");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return backgroundExecutor;
+    }
+
+    private void buildAutocomplete(List<Product> products) {
+        AutocompleteIndex index = AutocompleteIndex.of(products);
+        autocompleteIndex = index;
+        System.out.println("Autocomplete index: " + index.size() + " titles, " + index.keyCount() + " keys, "
+                + index.keyBytes() / 1024 + " KB");
+    }
+
+    /**
+     * IDF drift above which a background reweight is started.
+     */
+    public void setIdfDriftThreshold(double idfDriftThreshold) {
+        this.idfDriftThreshold = idfDriftThreshold;
+    }
+
+    public double getIdfDrift() {
+        modelLock.readLock().lock();
+        try {
+            return modelReady ? vectorizer.getIdfDrift() : 0.0;
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    // --- Vector storage ---
+
+    /**
+     * Keep the inverted index postings in an off-heap arena (see
+     * VectorArena) instead of millions of small on-heap arrays, so GC cost no
+     * longer grows with the catalogue. Scoring reads the postings straight
+     * from the arena; product vectors are not stored but re-weighted from the
+     * cached term ids when a catalogue change needs them.
+     *
+     * @param backingDir Directory for memory-mapped arena files, or null for
+     *                   direct memory (ignored when disabling).
+     */
+    public void setOffHeapVectors(boolean enabled, File backingDir) {
+        modelLock.writeLock().lock();
+        try {
+            if (enabled && vectorPrecision != VectorPrecision.DOUBLE)
+                throw new IllegalStateException("Quantized vectors are stored on-heap only");
+            SparseVector[] vectors = modelReady ? vectors() : null;
+            this.offHeapVectors = enabled;
+            this.arenaDir = enabled ? backingDir : null;
+            if (vectors != null) {
+                setVectors(vectors);
+                modelVersion++;
+                queryCache.invalidate();
+            }
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    public boolean isOffHeapVectors() {
+        return offHeapVectors;
+    }
+
+    /**
+     * Bytes held in off-heap arenas (postings).
+     */
+    public long getOffHeapBytes() {
+        modelLock.readLock().lock();
+        try {
+            VectorArena postings = invertedIndex != null ? invertedIndex.getPostingArena() : null;
+            return postings != null ? postings.sizeBytes() : 0;
+        } finally {
+            modelLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Store product vectors and postings at reduced precision (see
+     * VectorPrecision): 1 or 2 bytes per weight instead of 8, with dot
+     * products accumulated in float. Use {@link #checkPrecision} first to
+     * see how much the rankings move. Not available with off-heap vectors.
+     */
+    public void setVectorPrecision(VectorPrecision precision) {
+        modelLock.writeLock().lock();
+        try {
+            if (precision != VectorPrecision.DOUBLE && offHeapVectors)
+                throw new IllegalStateException("Quantized vectors are stored on-heap only");
+            this.vectorPrecision = precision;
+            if (modelReady) {
+                setVectors(vectors()); // Requantize from the exact weights
+                modelVersion++;
+                queryCache.invalidate();
+            }
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    public VectorPrecision getVectorPrecision() {
+        return vectorPrecision;
+    }
+
+    /**
+     * Compare the rankings at a reduced precision with full precision on a
+     * query set, without changing the engine: both indexes are built from the
+     * exact product vectors and every query is scored with each (no cache),
+     * using cosine similarity. Each query's own maxResults is replaced by k.
+     */
+    public RankOverlap checkPrecision(VectorPrecision precision, List<Query> queries, int k) {
+        if (k <= 0)
+            throw new IllegalArgumentException("k must be positive");
+        modelLock.readLock().lock();
+        try {
+            if (!modelReady)
+                throw new IllegalStateException("Model has not been trained");
+            SparseVector[] vectors = vectors();
+            int vocabSize = vectorizer.getVocabSize();
+            InvertedIndex reference = new InvertedIndex(vectors, vocabSize, false, null, VectorPrecision.DOUBLE);
+            InvertedIndex reduced = new InvertedIndex(vectors, vocabSize, false, null, precision);
+
+            Map<String, BitSet> matchCache = new HashMap<>();
+            double sum = 0.0, min = 1.0;
+            int count = 0;
+            for (Query q : queries) {
+                short categoryFilter = columns.resolveCategory(q.getCategory());
+                if (categoryFilter == ProductColumns.NO_CATEGORY)
                     continue;
+                BitSet filter = columns.filter(q.getMinPrice(), q.getMaxPrice(), categoryFilter);
+                List<RecommendationResult> expected = new ArrayList<>();
+                computeRecommendations(q.getText(), filter, matchCache, k, false, new CosineScorer(reference),
+                        expected);
+                List<RecommendationResult> actual = new ArrayList<>();
+                computeRecommendations(q.getText(), filter, matchCache, k, false, new CosineScorer(reduced), actual);
+
+                Set<String> expectedIds = new HashSet<>();
+                for (RecommendationResult r : expected)
+                    expectedIds.add(r.getProductId());
+                int shared = 0;
+                for (RecommendationResult r : actual) {
+                    if (expectedIds.contains(r.getProductId()))
+                        shared++;
+                }
+                int size = Math.max(expected.size(), actual.size());
+                double overlap = size == 0 ? 1.0 : (double) shared / size;
+                sum += overlap;
+                min = Math.min(min, overlap);
+                count++;
             }
-            filtered.add(p);
+            return new RankOverlap(precision, k, count, count == 0 ? 1.0 : sum / count, min,
+                    reference.postingBytes(), reduced.postingBytes());
+        } finally {
+            modelLock.readLock().unlock();
         }
-        return filtered;
     }
 
-    // --- Similarity Helpers ---
+    /**
+     * Exact product vectors by ordinal, re-weighted from the cached term ids
+     * when they are not kept on-heap (off-heap or quantized postings: scoring
+     * only reads the postings, so no second copy is stored). Matches the
+     * vectors the postings were built from: IDF weights of terms already in
+     * use only change on reweight(), which re-weights every vector.
+     */
+    private SparseVector[] vectors() {
+        if (productVectors != null)
+            return productVectors;
+        SparseVector[] vectors = new SparseVector[analyzedProducts.length];
+        for (int i = 0; i < vectors.length; i++)
+            vectors[i] = vectorizer.transform(analyzedProducts[i].getTermIds());
+        return vectors;
+    }
+
+    /**
+     * All product vectors, to patch for a catalogue change, or null off-heap:
+     * the arena postings are patched from the changed product's vectors
+     * alone, so the others are not re-weighted.
+     */
+    private SparseVector[] vectorsToPatch() {
+        return offHeapVectors ? null : vectors();
+    }
+
+    /**
+     * Store the product vectors and rebuild the inverted index from them, on
+     * or off-heap, at the configured precision.
+     */
+    private void setVectors(SparseVector[] vectors) {
+        InvertedIndex previous = invertedIndex;
+        invertedIndex = new InvertedIndex(vectors, vectorizer.getVocabSize(), offHeapVectors, arenaDir,
+                vectorPrecision);
+        if (previous != null)
+            previous.close(); // Queries hold the read lock, none is using it
+        productVectors = offHeapVectors || vectorPrecision != VectorPrecision.DOUBLE ? null : vectors;
+        scorer = newScorer();
+    }
+
+    private Scorer newScorer() {
+        return scoringModel == ScoringModel.BM25F ? new Bm25Scorer(analyzedProducts, vectorizer)
+                : new CosineScorer(invertedIndex);
+    }
 
-    private double calculateCosineSimilarity(double[] v1, double[] v2) {
-        if (v1.length != v2.length)
+    /**
+     * Text similarity model. BM25F weights come from the product texts and
+     * are precomputed here (and after every catalogue change), so queries
+     * only sum postings.
+     */
+    public void setScoringModel(ScoringModel scoringModel) {
+        modelLock.writeLock().lock();
+        try {
+            this.scoringModel = scoringModel;
+            if (modelReady) {
+                scorer = newScorer();
+                modelVersion++;
+                queryCache.invalidate();
+            }
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    public ScoringModel getScoringModel() {
+        return scoringModel;
+    }
+
+    private int indexOf(String productId) {
+        for (int i = 0; i < allProducts.size(); i++) {
+            if (Objects.equals(allProducts.get(i).getId(), productId))
+                return i;
+        }
+        return -1;
+    }
+
+    private static <T> T[] removeAt(T[] array, int index) {
+        T[] result = Arrays.copyOf(array, array.length - 1);
+        System.arraycopy(array, index + 1, result, index, result.length - index);
+        return result;
+    }
+
+    private AnalyzedProduct analyze(Product p, int[] termIds) {
+        // Title words come first in textOf(p), so they are the leading term ids
+        return new AnalyzedProduct(Analyzer.normalize(p.getTitle()), Analyzer.normalize(p.getCategory()),
+                termIds, Analyzer.get().count(p.getTitle()));
+    }
+
+    private double averageSentiment(Product p) {
+        if (p.getReviews().isEmpty())
             return 0.0;
-        double dot = 0.0, n1 = 0.0, n2 = 0.0;
-        for (int i = 0; i < v1.length; i++) {
-            dot += v1[i] * v2[i];
-            n1 += v1[i] * v1[i];
-            n2 += v2[i] * v2[i];
+        double totalSentiment = 0.0;
+        for (com.recommendation.preprocessing.Review r : p.getReviews()) {
+            totalSentiment += sentimentClassifier.predict(r.getBody());
         }
-        return (n1 == 0 || n2 == 0) ? 0.0 : dot / (Math.sqrt(n1) * Math.sqrt(n2));
+        return totalSentiment / p.getReviews().size(); // Average Probability
     }
 
-    private double substringBonus(String query, String title) {
-        return normalize(title).contains(normalize(query)) ? 0.2 : 0.0;
+    /**
+     * Keyword index over the product words. Its words are the vectorizer's
+     * vocabulary, so word ids are TF-IDF term ids; a hashing vectorizer has no
+     * vocabulary, so the index then gets a dictionary of its own.
+     */
+    private KeywordIndex newKeywordIndex() {
+        TermDictionary terms = hashBits > 0 ? new TermDictionary() : vectorizer.terms();
+        int[][] ids = new int[analyzedProducts.length][];
+        for (int i = 0; i < ids.length; i++)
+            ids[i] = keywordIds(allProducts.get(i), analyzedProducts[i].getTermIds(), terms);
+        return new KeywordIndex(terms, ids);
     }
 
-    private double categoryBonus(String query, String cat) {
-        String nQ = normalize(query), nC = normalize(cat);
-        return (nQ.contains(nC) || nC.contains(nQ)) ? 0.15 : 0.0;
+    /**
+     * Word ids of a product in the keyword dictionary (new words are added to
+     * it): its TF-IDF term ids, or its text re-analyzed in hashing mode.
+     */
+    private int[] keywordIds(Product product, int[] termIds, TermDictionary terms) {
+        if (hashBits == 0)
+            return termIds;
+        return Analyzer.get().termIds(textOf(product), terms, 0, true);
     }
 
-    private boolean fuzzyContains(String text, String keyword, int maxEdits) {
-        if (text.contains(keyword))
-            return true;
-        for (String word : text.split("\\s+")) {
-            if (Math.abs(word.length() - keyword.length()) <= maxEdits) {
-                if (levenshtein(word, keyword) <= maxEdits)
-                    return true;
+    private static String textOf(Product p) {
+        return p.getTitle() + " " + p.getDescription();
+    }
+
+    /**
+     * Score candidates on the scoring pool. Shard s takes every S-th entry of
+     * the static-score order, so all shards see a similar score distribution
+     * and prune equally well. Each shard keeps its own top-k; merging them is
+     * deterministic because the heap order is total (score, then ordinal).
+     */
+    private TopKHeap scoreParallel(QueryContext ctx, int[] order, int maxResults) {
+        int shards = Math.min(parallelism, order.length);
+        List<Callable<TopKHeap>> tasks = new ArrayList<>();
+        for (int s = 0; s < shards; s++) {
+            final int start = s;
+            tasks.add(() -> {
+                TopKHeap shardTopK = new TopKHeap(maxResults);
+                scoreShard(ctx, order, start, shards, shardTopK);
+                return shardTopK;
+            });
+        }
+
+        TopKHeap merged = new TopKHeap(maxResults);
+        for (Future<TopKHeap> future : getScoringPool().invokeAll(tasks)) {
+            try {
+                merged.offerAll(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while scoring", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Scoring shard failed", e.getCause());
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Score the candidates order[start], order[start + step], ... (static-rank
+     * ascending) into the given heap, pruning with the heap's k-th score.
+     */
+    private void scoreShard(QueryContext ctx, int[] order, int start, int step, TopKHeap topK) {
+        int visited = 0;
+        for (int j = start; j < order.length; j += step) {
+            if (ctx.rerankDeadline != 0 && visited++ % BUDGET_CHECK_INTERVAL == 0 && topK.isFull()
+                    && System.nanoTime() - ctx.rerankDeadline > 0) {
+                ctx.budgetExceeded = true;
+                break;
+            }
+            int i = staticOrder[order[j]];
+            double threshold = MIN_SCORE_THRESHOLD;
+            if (topK.isFull())
+                threshold = Math.max(threshold, topK.minScore());
+
+            // No later product can beat the threshold: stop
+            if (staticScores[i] + ctx.maxSimilarity * WEIGHT_SIMILARITY + BOUND_EPSILON < threshold)
+                break;
+
+            double similarity = ctx.similarities.get(i);
+
+            int matchCount = 0;
+            for (BitSet matches : ctx.keywordMatches) {
+                if (matches.get(i))
+                    matchCount++;
             }
+            double matchBonus = 0.0;
+            if (ctx.keywordCount > 0 && matchCount > 0) {
+                matchBonus = (double) matchCount / ctx.keywordCount * 0.15;
+            }
+
+            // This product cannot beat the threshold even with both domain bonuses: skip
+            double bound = Math.min(1.0, similarity + MAX_BONUS + matchBonus);
+            if (staticScores[i] + bound * WEIGHT_SIMILARITY + BOUND_EPSILON < threshold)
+                continue;
+
+            double similarityScore = similarity;
+
+            // Domain bonuses
+            AnalyzedProduct analyzed = analyzedProducts[i];
+            similarityScore += substringBonus(ctx.normalizedQuery, analyzed.getNormalizedTitle());
+            similarityScore += categoryBonus(ctx.normalizedQuery, analyzed.getNormalizedCategory());
+            similarityScore += matchBonus;
+
+            similarityScore = Math.min(1.0, similarityScore);
+
+            double finalScore = similarityScore * WEIGHT_SIMILARITY + staticScores[i];
+            if (finalScore < MIN_SCORE_THRESHOLD)
+                continue;
+
+            topK.offer(i, finalScore);
         }
-        return false;
     }
 
-    private int levenshtein(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-        for (int i = 0; i <= s1.length(); i++)
-            dp[i][0] = i;
-        for (int j = 0; j <= s2.length(); j++)
-            dp[0][j] = j;
-        for (int i = 1; i <= s1.length(); i++) {
-            for (int j = 1; j <= s2.length(); j++) {
-                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+    private synchronized ForkJoinPool getScoringPool() {
+        if (scoringPool == null)
+            scoringPool = new ForkJoinPool(parallelism);
+        return scoringPool;
+    }
+
+    /**
+     * Number of threads used to score large candidate sets (1 = sequential).
+     * Waits for running queries, which may still be using the old pool.
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        modelLock.writeLock().lock(); // Before the pool monitor: queries take them in that order
+        try {
+            synchronized (this) {
+                if (scoringPool != null && parallelism != this.parallelism) {
+                    scoringPool.shutdown();
+                    scoringPool = null;
+                }
+                this.parallelism = parallelism;
             }
+        } finally {
+            modelLock.writeLock().unlock();
         }
-        return dp[s1.length()][s2.length()];
     }
 
-    private String normalize(String t) {
-        return t == null ? "" : t.toLowerCase().replaceAll("[^a-z0-9\\s]", "").trim();
+    /**
+     * Candidate count below which scoring stays on the calling thread.
+     */
+    public void setParallelCutoff(int parallelCutoff) {
+        if (parallelCutoff < 0)
+            throw new IllegalArgumentException("Parallel cutoff must not be negative");
+        this.parallelCutoff = parallelCutoff;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Number of candidates the recall stage passes on to the rerank (at least
+     * the number of results asked for). A larger recall reranks more
+     * candidates whose bonuses could lift them into the results.
+     */
+    public void setRecallSize(int recallSize) {
+        if (recallSize < 1)
+            throw new IllegalArgumentException("Recall size must be at least 1");
+        modelLock.writeLock().lock();
+        try {
+            this.recallSize = recallSize;
+            modelVersion++; // Cached results were ranked with the old size
+            queryCache.invalidate();
+        } finally {
+            modelLock.writeLock().unlock();
+        }
+    }
+
+    public int getRecallSize() {
+        return recallSize;
+    }
+
+    /**
+     * Time budgets of the recall and rerank stages (null for none), measured
+     * from the start of the query and of the rerank. A stage that runs out of
+     * time stops as soon as it holds enough candidates (recall size, results
+     * asked for) and keeps the best found so far; such results are not cached.
+     */
+    public void setStageBudgets(Duration recallBudget, Duration rerankBudget) {
+        this.recallBudgetNanos = recallBudget == null ? 0 : Math.max(1, recallBudget.toNanos());
+        this.rerankBudgetNanos = rerankBudget == null ? 0 : Math.max(1, rerankBudget.toNanos());
+    }
+
+    /**
+     * Stage timings of the most recently computed query (cache hits are not
+     * computed), or null before the first one.
+     */
+    public StageTimings getLastStageTimings() {
+        return lastTimings;
+    }
+
+    private RecommendationResult toResult(Product product, double score) {
+        return new RecommendationResult(
+                product.getId(), product.getTitle(), product.getPrice(),
+                product.getImageUrl(), product.getLink(), product.getDescription(),
+                product.getAvgRating(), product.getReviewCount(), score, product.getCategory());
+    }
+
+    /**
+     * Query-independent part of the composite score: rating, reviews, price
+     * and sentiment. The full score is similarity * WEIGHT_SIMILARITY plus
+     * this.
+     */
+    private double calculateStaticScore(int ordinal) {
+        double ratingScore = columns.getAvgRating(ordinal) / 5.0;
+
+        // Fixed scale normalization (consistent results)
+        double reviewScore = Math.min(columns.getReviewCount(ordinal) / 100.0, 1.0);
+        double priceScore = 1.0 - Math.min(columns.getPrice(ordinal) / 1000.0, 1.0);
+
+        // Retrieve cached sentiment (Step 4 - Runtime)
+        double sentimentScore = columns.getSentiment(ordinal);
+        // Normalize sentiment (-1 to 1) to (0 to 1) for scoring
+        double normalizedSentiment = (sentimentScore + 1.0) / 2.0;
+
+        return (ratingScore * WEIGHT_RATING) +
+                (reviewScore * WEIGHT_REVIEWS) + (priceScore * WEIGHT_PRICE) +
+                (normalizedSentiment * WEIGHT_SENTIMENT);
+    }
+
+    /**
+     * Precompute the query-independent part of each product's composite score
+     * (rating, reviews, price, sentiment) and the products ordered by it.
+     * Queries only add the weighted similarity, and the static score plus the
+     * best possible similarity bounds what a product can still reach.
+     */
+    private void computeStaticScores() {
+        int n = allProducts.size();
+        this.staticScores = new float[n];
+        for (int i = 0; i < n; i++) {
+            staticScores[i] = (float) calculateStaticScore(i);
+        }
+
+        Integer[] byScore = new Integer[n];
+        for (int i = 0; i < n; i++)
+            byScore[i] = i;
+        Arrays.sort(byScore, this::compareStatic);
+
+        int[] order = new int[n];
+        for (int r = 0; r < n; r++)
+            order[r] = byScore[r];
+        setStaticOrder(order);
+    }
+
+    // Descending static score, ties by ordinal
+    private int compareStatic(int a, int b) {
+        int cmp = Float.compare(staticScores[b], staticScores[a]);
+        return cmp != 0 ? cmp : Integer.compare(a, b);
+    }
+
+    private void setStaticOrder(int[] order) {
+        this.staticOrder = order;
+        this.staticRank = new int[order.length];
+        for (int r = 0; r < order.length; r++)
+            staticRank[order[r]] = r;
+    }
+
+    // --- Similarity Helpers ---
+
+    // Both arguments are already normalized (see Analyzer.normalize)
+    private double substringBonus(String nQ, String nTitle) {
+        return nTitle.contains(nQ) ? 0.2 : 0.0;
+    }
+
+    private double categoryBonus(String nQ, String nC) {
+        return (nQ.contains(nC) || nC.contains(nQ)) ? 0.15 : 0.0;
+    }
+
+    /**
+     * Per-query values shared (read-only, except for the budget flag) by all
+     * scoring shards.
+     */
+    private static class QueryContext {
+        final String normalizedQuery;
+        final int keywordCount; // Query tokens (see Analyzer)
+        final List<BitSet> keywordMatches;
+        final SimilarityAccumulator similarities; // Text similarity per product ordinal
+        final double maxSimilarity; // Upper bound of the similarity for any candidate
+        long rerankDeadline; // System.nanoTime() to stop the rerank at, 0 for none (set before it starts)
+        volatile boolean budgetExceeded; // Set by the stage that ran out of time
+
+        QueryContext(String normalizedQuery, int keywordCount, List<BitSet> keywordMatches,
+                SimilarityAccumulator similarities, double maxSimilarity) {
+            this.normalizedQuery = normalizedQuery;
+            this.keywordCount = keywordCount;
+            this.keywordMatches = keywordMatches;
+            this.similarities = similarities;
+            this.maxSimilarity = maxSimilarity;
+        }
     }
 
     // --- Statistics ---
@@ -244,17 +1304,40 @@ public class RecommendationEngine extends AbstractRecommendationEngine {
 
     public Map<String, Integer> getCategoryStats() {
         Map<String, Integer> statsMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
-        for (Product p : allProducts) {
-            String cat = p.getCategory();
-            if (cat != null && !cat.isEmpty()) {
-                statsMap.put(cat, statsMap.getOrDefault(cat, 0) + 1);
+        modelLock.readLock().lock();
+        try {
+            for (Product p : allProducts) {
+                String cat = p.getCategory();
+                if (cat != null && !cat.isEmpty()) {
+                    statsMap.put(cat, statsMap.getOrDefault(cat, 0) + 1);
+                }
             }
+        } finally {
+            modelLock.readLock().unlock();
         }
         return statsMap;
     }
 
     public double[] getPriceRange() {
-        return new double[] { stats.minPrice, stats.maxPrice };
+        DatasetStats current = stats;
+        return new double[] { current.minPrice, current.maxPrice };
+    }
+
+    /**
+     * Typeahead over the product titles (see AutocompleteIndex). Built at
+     * training and rebuilt in the background after catalogue changes, so it
+     * can lag them briefly; read without locking, so the UI can complete on
+     * each keystroke. Completions never run a recommendation query.
+     */
+    public AutocompleteIndex getAutocompleteIndex() {
+        return autocompleteIndex;
+    }
+
+    /**
+     * Query result cache (hit/miss counters, memory budget).
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
     }
 
     public int getTotalProducts() {
@@ -36,6 +36,15 @@ public class RecommendationResult implements Serializable {
         this.rank = 0;
     }
 
+    /**
+     * Copy constructor (strings are immutable and shared).
+     */
+    public RecommendationResult(RecommendationResult other) {
+        this(other.productId, other.title, other.price, other.imageUrl, other.link, other.description,
+                other.avgRating, other.reviewCount, other.score, other.category);
+        this.rank = other.rank;
+    }
+
     // Getters
     public String getProductId() {
         return productId;
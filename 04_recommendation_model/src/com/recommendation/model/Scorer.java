@@ -0,0 +1,30 @@
+package com.recommendation.model;
+
+/**
+ * Text similarity between a query and the products, computed from postings:
+ * only products sharing a term with the query get a non-zero similarity.
+ * Implementations are immutable and shared by concurrent queries.
+ *
+ * Similarities are in [0, 1], so they combine with the domain bonuses and
+ * the static part of the composite score the same way whatever the model.
+ */
+interface Scorer {
+
+    /**
+     * Accumulate the similarity of the products in the query terms' postings;
+     * only those are touched, whatever the catalogue size.
+     *
+     * @param queryVector  TF-IDF vector of the query.
+     * @param queryTerms   Term ids of the query in order (see
+     *                     TFIDFVectorizer.toTermIds), -1 for unknown words.
+     * @param similarities Empty accumulator, receives the similarity per
+     *                     product ordinal.
+     */
+    void similarities(SparseVector queryVector, int[] queryTerms, SimilarityAccumulator similarities);
+
+    /**
+     * Upper bound of the similarity of any product to the query, used to
+     * stop scoring early.
+     */
+    double upperBound(SparseVector queryVector, int[] queryTerms);
+}
@@ -0,0 +1,14 @@
+package com.recommendation.model;
+
+/**
+ * Text similarity model of a RecommendationEngine.
+ */
+public enum ScoringModel {
+    /** Cosine similarity of TF-IDF vectors. */
+    COSINE,
+    /**
+     * BM25F: saturating term frequency, normalized by field length, with
+     * title words weighted above description words.
+     */
+    BM25F
+}
@@ -0,0 +1,250 @@
+package com.recommendation.model;
+
+import com.recommendation.preprocessing.Product;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Recommendation engine partitioned by product category.
+ *
+ * Each category (as derived by DataLoader.extractCategory) gets its own
+ * RecommendationEngine with its own vocabulary, IDF table and indexes.
+ * Category-filtered queries are routed to a single shard; "All Categories"
+ * queries are scattered to every shard in parallel and the per-shard top-k
+ * lists are merged.
+ *
+ * One query cache budget is split evenly across the shards. The engine owns
+ * a thread pool: {@link #close()} it when done.
+ *
+ * Note: TF-IDF statistics are per shard, so scores are not identical to a
+ * single engine trained on the whole catalogue.
+ */
+public class ShardedRecommendationEngine extends AbstractRecommendationEngine implements AutoCloseable {
+
+    // Shard of products without a category. An empty filter means all categories, so it is never routed to.
+    private static final String NO_CATEGORY = "";
+
+    // Category -> shard, case-insensitive like the category filter
+    private final Map<String, RecommendationEngine> shards = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final ForkJoinPool pool;
+    private long queryCacheBudgetBytes = QueryCache.DEFAULT_BUDGET_BYTES; // Shared by all shards
+
+    public ShardedRecommendationEngine(List<Product> products) {
+        this(products, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism Number of threads used to train and query shards.
+     */
+    public ShardedRecommendationEngine(List<Product> products, int parallelism) {
+        super(products);
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+        trainModel();
+    }
+
+    @Override
+    protected void trainModel() {
+        if (allProducts == null || allProducts.isEmpty())
+            return;
+
+        Map<String, List<Product>> byCategory = groupByCategory(allProducts);
+        System.out.println("Training " + byCategory.size() + " category shards...");
+
+        Map<String, Callable<RecommendationEngine>> tasks = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Product>> entry : byCategory.entrySet()) {
+            List<Product> shardProducts = entry.getValue();
+            tasks.put(entry.getKey(), () -> newShard(shardProducts));
+        }
+        Map<String, RecommendationEngine> trained = invokeAll(tasks);
+
+        synchronized (shards) {
+            shards.clear();
+            shards.putAll(trained);
+            splitCacheBudget();
+        }
+        this.modelReady = true;
+    }
+
+    /**
+     * Retrain a single shard from the current catalogue, leaving the others
+     * untouched.
+     */
+    public void retrainShard(String category) {
+        List<Product> shardProducts = new ArrayList<>();
+        synchronized (shards) {
+            for (Product p : allProducts) {
+                if (categoryOf(p).equalsIgnoreCase(category))
+                    shardProducts.add(p);
+            }
+        }
+        retrainShard(category, shardProducts);
+    }
+
+    /**
+     * Replace a shard's products and retrain it (an empty list drops the
+     * shard). The catalogue is updated too: the new products take the place
+     * of the category's old ones.
+     */
+    public void retrainShard(String category, List<Product> shardProducts) {
+        RecommendationEngine shard = shardProducts.isEmpty() ? null : newShard(new ArrayList<>(shardProducts));
+        synchronized (shards) {
+            if (shard == null)
+                shards.remove(category);
+            else
+                shards.put(category, shard);
+            allProducts = replaceCategory(allProducts, category, shardProducts);
+            splitCacheBudget();
+        }
+    }
+
+    /**
+     * Memory budget of the query caches of all shards together.
+     */
+    public void setQueryCacheBudgetBytes(long budgetBytes) {
+        synchronized (shards) {
+            this.queryCacheBudgetBytes = budgetBytes;
+            splitCacheBudget();
+        }
+    }
+
+    // Give each shard an equal part of the budget (caller holds the shards lock)
+    private void splitCacheBudget() {
+        for (RecommendationEngine shard : shards.values())
+            shard.getQueryCache().setBudgetBytes(queryCacheBudgetBytes / shards.size());
+    }
+
+    // Catalogue with a category's products replaced, at the position of its first one (or at the end)
+    private static List<Product> replaceCategory(List<Product> products, String category,
+            List<Product> replacement) {
+        List<Product> replaced = new ArrayList<>(products.size());
+        boolean inserted = false;
+        for (Product p : products) {
+            if (!categoryOf(p).equalsIgnoreCase(category)) {
+                replaced.add(p);
+            } else if (!inserted) {
+                replaced.addAll(replacement);
+                inserted = true;
+            }
+        }
+        if (!inserted)
+            replaced.addAll(replacement);
+        return replaced;
+    }
+
+    @Override
+    public List<RecommendationResult> getRecommendations(String query, double minPrice, double maxPrice,
+            String category, int maxResults) {
+        List<RecommendationResult> results = new ArrayList<>();
+        if (!modelReady || maxResults <= 0)
+            return results;
+
+        // 1. Category filter: route to a single shard
+        if (category != null && !category.isEmpty() && !category.equalsIgnoreCase("All Categories")) {
+            RecommendationEngine shard;
+            synchronized (shards) {
+                shard = shards.get(category);
+            }
+            // The shard only holds this category: no further category filter needed
+            return shard == null ? results : shard.getRecommendations(query, minPrice, maxPrice, null, maxResults);
+        }
+
+        // 2. No filter: scatter to all shards, gather their top-k
+        Map<String, Callable<List<RecommendationResult>>> tasks = new LinkedHashMap<>();
+        synchronized (shards) {
+            for (Map.Entry<String, RecommendationEngine> entry : shards.entrySet()) {
+                RecommendationEngine shard = entry.getValue();
+                tasks.put(entry.getKey(),
+                        () -> shard.getRecommendations(query, minPrice, maxPrice, category, maxResults));
+            }
+        }
+        for (List<RecommendationResult> shardResults : invokeAll(tasks).values()) {
+            results.addAll(shardResults);
+        }
+
+        // 3. Merge: stable sort keeps shard order, then shard rank, on ties
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        if (results.size() > maxResults)
+            results = new ArrayList<>(results.subList(0, maxResults));
+        for (int i = 0; i < results.size(); i++)
+            results.get(i).setRank(i + 1);
+        return results;
+    }
+
+    private RecommendationEngine newShard(List<Product> shardProducts) {
+        RecommendationEngine shard = new RecommendationEngine(shardProducts);
+        shard.setParallelism(1); // Parallelism comes from scattering across shards
+        return shard;
+    }
+
+    private <T> Map<String, T> invokeAll(Map<String, Callable<T>> tasks) {
+        List<String> keys = new ArrayList<>(tasks.keySet());
+        List<Future<T>> futures = pool.invokeAll(new ArrayList<>(tasks.values()));
+        Map<String, T> results = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            try {
+                results.put(keys.get(i), futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for shard " + keys.get(i), e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Shard " + keys.get(i) + " failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    private static Map<String, List<Product>> groupByCategory(List<Product> products) {
+        Map<String, List<Product>> byCategory = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Product p : products) {
+            byCategory.computeIfAbsent(categoryOf(p), c -> new ArrayList<>()).add(p);
+        }
+        return byCategory;
+    }
+
+    private static String categoryOf(Product p) {
+        String category = p.getCategory();
+        return category == null || category.isEmpty() ? NO_CATEGORY : category;
+    }
+
+    // --- Statistics ---
+
+    public Map<String, Integer> getCategoryStats() {
+        Map<String, Integer> statsMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        synchronized (shards) {
+            for (Map.Entry<String, RecommendationEngine> entry : shards.entrySet()) {
+                if (!entry.getKey().equals(NO_CATEGORY)) // Not a category, like RecommendationEngine
+                    statsMap.put(entry.getKey(), entry.getValue().getTotalProducts());
+            }
+        }
+        return statsMap;
+    }
+
+    public RecommendationEngine getShard(String category) {
+        synchronized (shards) {
+            return shards.get(category);
+        }
+    }
+
+    public int getShardCount() {
+        synchronized (shards) {
+            return shards.size();
+        }
+    }
+
+    /**
+     * Shut the shard thread pool down; the engine cannot be queried or
+     * retrained afterwards.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
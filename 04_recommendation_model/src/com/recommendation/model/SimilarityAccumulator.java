@@ -0,0 +1,102 @@
+package com.recommendation.model;
+
+import java.util.Arrays;
+
+/**
+ * Per-query similarity scores kept sparse: a score array indexed by product
+ * ordinal plus the list of ordinals touched, so a query costs its postings
+ * rather than the catalogue size. Untouched products score 0.
+ *
+ * Arrays are reused across queries: one accumulator per thread (see
+ * acquire), cleared on release by resetting the touched entries only.
+ */
+final class SimilarityAccumulator {
+
+    private static final ThreadLocal<SimilarityAccumulator> LOCAL = ThreadLocal
+            .withInitial(SimilarityAccumulator::new);
+
+    private double[] scores = new double[0]; // By ordinal, 0 when untouched
+    private boolean[] touched = new boolean[0];
+    private int[] ordinals = new int[16]; // Touched ordinals, in first-touch order
+    private int count;
+    private boolean inUse;
+
+    private SimilarityAccumulator() {
+    }
+
+    /**
+     * This thread's accumulator, empty and sized for docCount products (a new
+     * one if the thread's is still held by an enclosing query).
+     */
+    static SimilarityAccumulator acquire(int docCount) {
+        SimilarityAccumulator acc = LOCAL.get();
+        if (acc.inUse)
+            acc = new SimilarityAccumulator();
+        if (acc.scores.length < docCount) {
+            acc.scores = new double[docCount];
+            acc.touched = new boolean[docCount];
+        }
+        acc.inUse = true;
+        return acc;
+    }
+
+    /**
+     * Clear the touched entries and hand the arrays back for the next query.
+     */
+    void release() {
+        for (int k = 0; k < count; k++) {
+            scores[ordinals[k]] = 0.0;
+            touched[ordinals[k]] = false;
+        }
+        count = 0;
+        inUse = false;
+    }
+
+    void add(int doc, double value) {
+        touch(doc);
+        scores[doc] += value;
+    }
+
+    /**
+     * Add in float arithmetic (reduced precision postings accumulate in
+     * float, see InvertedIndex).
+     */
+    void addFloat(int doc, float value) {
+        touch(doc);
+        scores[doc] = (float) scores[doc] + value;
+    }
+
+    private void touch(int doc) {
+        if (touched[doc])
+            return;
+        touched[doc] = true;
+        if (count == ordinals.length)
+            ordinals = Arrays.copyOf(ordinals, count * 2);
+        ordinals[count++] = doc;
+    }
+
+    /**
+     * Number of products touched.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * The k-th product touched.
+     */
+    int ordinal(int k) {
+        return ordinals[k];
+    }
+
+    double get(int doc) {
+        return scores[doc];
+    }
+
+    /**
+     * Replace the score of a touched product (normalization).
+     */
+    void set(int doc, double value) {
+        scores[doc] = value;
+    }
+}
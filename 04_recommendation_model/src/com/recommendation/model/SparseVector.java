@@ -0,0 +1,111 @@
+package com.recommendation.model;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Immutable sparse vector: sorted term indices with their weights.
+ * Only non-zero entries are stored, so memory and dot-product cost scale with
+ * the number of terms in a document instead of the vocabulary size.
+ */
+public class SparseVector implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int dimension;
+    private final int[] indices; // Sorted ascending, no duplicates
+    private final double[] values;
+    private final double norm;
+
+    /**
+     * @param dimension Logical size of the vector (vocabulary size).
+     * @param indices   Term indices, sorted ascending.
+     * @param values    Weights aligned with {@code indices}.
+     */
+    public SparseVector(int dimension, int[] indices, double[] values) {
+        if (indices.length != values.length) {
+            throw new IllegalArgumentException("Indices and values must have the same length");
+        }
+        this.dimension = dimension;
+        this.indices = indices;
+        this.values = values;
+
+        double sum = 0.0;
+        for (double v : values) {
+            sum += v * v;
+        }
+        this.norm = Math.sqrt(sum);
+    }
+
+    /**
+     * Create an empty vector of the given dimension.
+     */
+    public static SparseVector empty(int dimension) {
+        return new SparseVector(dimension, new int[0], new double[0]);
+    }
+
+    /**
+     * Dot product with another sparse vector (merge join over sorted indices).
+     */
+    public double dot(SparseVector other) {
+        int[] a = indices, b = other.indices;
+        int i = 0, j = 0;
+        double dot = 0.0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                dot += values[i++] * other.values[j++];
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dot;
+    }
+
+    /**
+     * Cosine similarity with another vector (0 if either vector is empty).
+     */
+    public double cosineSimilarity(SparseVector other) {
+        if (dimension != other.dimension)
+            return 0.0;
+        if (norm == 0 || other.norm == 0)
+            return 0.0;
+        return dot(other) / (norm * other.norm);
+    }
+
+    /**
+     * Weight of a term, 0 if absent.
+     */
+    public double get(int index) {
+        int pos = Arrays.binarySearch(indices, index);
+        return pos >= 0 ? values[pos] : 0.0;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    /**
+     * Number of non-zero entries.
+     */
+    public int size() {
+        return indices.length;
+    }
+
+    public int indexAt(int i) {
+        return indices[i];
+    }
+
+    public double valueAt(int i) {
+        return values[i];
+    }
+
+    public double getNorm() {
+        return norm;
+    }
+
+    @Override
+    public String toString() {
+        return "SparseVector{dim=" + dimension + ", nnz=" + indices.length + "}";
+    }
+}
@@ -0,0 +1,59 @@
+package com.recommendation.model;
+
+/**
+ * Timings of one query through the two ranking stages of
+ * RecommendationEngine: recall (keyword expansion, index similarity and the
+ * cheap top-N cut) and rerank (keyword counting, bonuses and the composite
+ * score of the recalled candidates).
+ */
+public final class StageTimings {
+
+    private final int candidateCount; // Products passing the filter and keyword match
+    private final int recalledCount; // Candidates passed on to the rerank stage
+    private final long recallNanos;
+    private final long rerankNanos;
+    private final boolean budgetExceeded; // A stage stopped early on its time budget
+
+    StageTimings(int candidateCount, int recalledCount, long recallNanos, long rerankNanos,
+            boolean budgetExceeded) {
+        this.candidateCount = candidateCount;
+        this.recalledCount = recalledCount;
+        this.recallNanos = recallNanos;
+        this.rerankNanos = rerankNanos;
+        this.budgetExceeded = budgetExceeded;
+    }
+
+    public int getCandidateCount() {
+        return candidateCount;
+    }
+
+    public int getRecalledCount() {
+        return recalledCount;
+    }
+
+    public long getRecallNanos() {
+        return recallNanos;
+    }
+
+    public long getRerankNanos() {
+        return rerankNanos;
+    }
+
+    public long getTotalNanos() {
+        return recallNanos + rerankNanos;
+    }
+
+    /**
+     * Whether a stage ran out of its time budget, in which case the results
+     * are the best found in time (and are not cached).
+     */
+    public boolean isBudgetExceeded() {
+        return budgetExceeded;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("recall %.3f ms (%d -> %d candidates), rerank %.3f ms%s", recallNanos / 1e6,
+                candidateCount, recalledCount, rerankNanos / 1e6, budgetExceeded ? ", budget exceeded" : "");
+    }
+}
@@ -1,6 +1,13 @@
 package com.recommendation.model;
 
-import java.util.*;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * Implements TF-IDF (Term Frequency-Inverse Document Frequency) Vectorization.
@@ -8,24 +15,41 @@ import java.util.*;
  * 
  * training phase: Learns vocabulary and IDF weights from corpus.
  * transform phase: Converts new text into vectors based on learned vocabulary.
+ *
+ * In feature hashing mode there is no vocabulary: terms are hashed into a
+ * fixed number of buckets (the vector dimension), with a hashed sign so that
+ * colliding terms tend to cancel out instead of adding up. Memory is then
+ * bounded by the number of buckets, whatever the number of distinct words.
  */
 public class TFIDFVectorizer {
 
-    private Map<String, Integer> vocabulary;
-    private Map<String, Double> idfWeights;
-    private int vocabSize;
+    // Term -> id; IDF and document frequency are parallel arrays indexed by id
+    private TermDictionary vocabulary = new TermDictionary(); // Empty in hashing mode
+    private final int hashBits; // Feature hashing into 2^hashBits buckets, 0 for an exact vocabulary
+    private float[] idfByIndex = new float[0];
     private boolean isTrained = false;
 
-    // Common stop words to ignore
-    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList(
-            "le", "la", "les", "un", "une", "des", "du", "de", "ce", "cet", "cette",
-            "et", "ou", "mais", "donc", "car", "ni", "or", "a", "à", "en", "pour",
-            "sur", "avec", "sans", "est", "sont", "c'est", "il", "elle", "ils", "elles",
-            "que", "qui", "quoi", "dont", "où", "plus", "moins", "très", "bien", "bon"));
+    // Corpus statistics kept up to date by addDocument/removeDocument
+    private int[] docFrequencyByIndex = new int[0];
+    private int totalDocuments;
+    private long totalPostings; // Sum of all document frequencies
+    private int weightedDocuments; // totalDocuments when idfByIndex was last computed
+    private final BitSet changedTerms = new BitSet(); // Document frequency changed since then
+
+    private static final int MAX_HASH_BITS = 28; // Bucket and sign must fit a non-negative int id
 
     public TFIDFVectorizer() {
-        this.vocabulary = new HashMap<>();
-        this.idfWeights = new HashMap<>();
+        this(0);
+    }
+
+    /**
+     * @param hashBits Hash terms into 2^hashBits buckets (1-28), or 0 to
+     *                 keep an exact vocabulary.
+     */
+    public TFIDFVectorizer(int hashBits) {
+        if (hashBits < 0 || hashBits > MAX_HASH_BITS)
+            throw new IllegalArgumentException("Hash bits must be between 0 and " + MAX_HASH_BITS + ": " + hashBits);
+        this.hashBits = hashBits;
     }
 
     /**
@@ -33,107 +57,333 @@ public class TFIDFVectorizer {
      * Builds vocabulary and calculates IDF weights.
      */
     public void fit(List<String> documents) {
-        System.out.println("Training TF-IDF model on " + documents.size() + " documents...");
-
-        vocabulary.clear();
-        idfWeights.clear();
-
-        // 1. Build Vocabulary and count document references
-        Map<String, Integer> docFrequencies = new HashMap<>();
-        int totalDocuments = documents.size();
-
-        // Temporary storage for unique words per doc
-        for (String doc : documents) {
-            Set<String> uniqueWords = getUniqueTokenArray(doc);
-            for (String word : uniqueWords) {
-                if (!vocabulary.containsKey(word)) {
-                    vocabulary.put(word, vocabulary.size());
-                }
-                docFrequencies.put(word, docFrequencies.getOrDefault(word, 0) + 1);
-            }
-        }
+        fit(TermStatistics.of(documents.stream(), hashBits));
+    }
+
+    /**
+     * Train on a stream of documents. Documents are tokenized and counted in
+     * parallel chunks, then the chunk counts are merged (see TermStatistics).
+     */
+    public void fit(Stream<String> documents) {
+        fit(TermStatistics.of(documents, hashBits));
+    }
 
-        this.vocabSize = vocabulary.size();
-        System.out.println("Vocabulary size: " + vocabSize);
+    /**
+     * Train on documents as they are read, without holding the corpus in
+     * memory.
+     */
+    public void fit(Iterator<String> documents) {
+        fit(TermStatistics.of(documents, hashBits));
+    }
+
+    /**
+     * Train from counted corpus statistics, for example the merged statistics
+     * of several CSV files or shards. They must use the same hashing mode.
+     */
+    public void fit(TermStatistics statistics) {
+        if (statistics.getHashBits() != hashBits)
+            throw new IllegalArgumentException("Statistics hashed into 2^" + statistics.getHashBits()
+                    + " buckets, vectorizer into 2^" + hashBits);
+        System.out.println("Training TF-IDF model on " + statistics.getDocumentCount() + " documents...");
+
+        // 1. Vocabulary and document frequencies (copied: the statistics may be merged into later)
+        this.vocabulary = new TermDictionary();
+        vocabulary.addAll(statistics.terms());
+        int vocabSize = getVocabSize();
+        this.docFrequencyByIndex = new int[vocabSize];
+        this.totalPostings = 0;
+        for (int t = 0; t < vocabSize; t++) {
+            docFrequencyByIndex[t] = statistics.documentFrequency(t);
+            totalPostings += docFrequencyByIndex[t];
+        }
+        if (hashBits > 0)
+            System.out.println("Feature hashing: " + vocabSize + " buckets, " + statistics.getTermCount() + " used");
+        else
+            System.out.println("Vocabulary size: " + vocabSize + " (" + vocabulary.memoryBytes() / 1024
+                    + " KB term dictionary)");
 
         // 2. Calculate IDF Weights
         // IDF(t) = log(TotalDocuments / (Number of documents containing t))
-        for (String word : docFrequencies.keySet()) {
-            double idf = Math.log((double) totalDocuments / (1 + docFrequencies.get(word)));
-            idfWeights.put(word, idf);
+        this.totalDocuments = statistics.getDocumentCount();
+        this.idfByIndex = new float[vocabSize];
+        for (int t = 0; t < vocabSize; t++) {
+            idfByIndex[t] = (float) currentIdf(t);
         }
+        this.weightedDocuments = totalDocuments;
+        changedTerms.clear();
 
         this.isTrained = true;
         System.out.println("Model training complete.");
     }
 
     /**
-     * Transform a document into a TF-IDF vector.
+     * Add a document to the corpus statistics without refitting. Unknown words
+     * are appended to the vocabulary and weighted right away; the IDF weights
+     * of existing words are left as they are until {@link #reweight()}.
+     *
+     * @return The document's term ids (see {@link #toTermIds(String)}).
      */
-    public double[] transform(String text) {
+    public int[] addDocument(String text) {
         if (!isTrained) {
             throw new IllegalStateException("Model has not been trained yet. Call fit() first.");
         }
+        int[] ids = Analyzer.get().termIds(text, vocabulary, hashBits, true);
+        ensureCapacity(getVocabSize() - 1);
 
-        double[] vector = new double[vocabSize];
-        List<String> tokens = tokenize(text);
+        totalDocuments++;
+        for (int id : distinctTerms(ids)) {
+            docFrequencyByIndex[id]++;
+            totalPostings++;
+            changedTerms.set(id);
+            // New (or no longer unused) words have no weight yet
+            if (docFrequencyByIndex[id] == 1)
+                setIdf(id, currentIdf(id));
+        }
+        return ids;
+    }
 
-        if (tokens.isEmpty()) {
-            return vector;
+    /**
+     * Remove a document, given its term ids, from the corpus statistics.
+     * Words left without documents stay in the vocabulary with a zero weight.
+     */
+    public void removeDocument(int[] termIds) {
+        totalDocuments--;
+        for (int id : distinctTerms(termIds)) {
+            docFrequencyByIndex[id]--;
+            totalPostings--;
+            changedTerms.set(id);
+            if (docFrequencyByIndex[id] == 0)
+                setIdf(id, 0.0);
+        }
+    }
+
+    /**
+     * How far the IDF weights in use are from the current corpus statistics:
+     * the average absolute IDF error per (term, document) pair. Adding or
+     * removing documents shifts every weight by log(N / N0), and the changed
+     * terms further by their own document frequency change.
+     */
+    public double getIdfDrift() {
+        if (totalPostings == 0 || weightedDocuments == 0 || totalDocuments == 0)
+            return 0.0;
+        double uniformShift = Math.abs(Math.log((double) totalDocuments / weightedDocuments));
+        long changedPostings = 0;
+        double changedError = 0.0;
+        for (int t = changedTerms.nextSetBit(0); t >= 0; t = changedTerms.nextSetBit(t + 1)) {
+            changedPostings += docFrequencyByIndex[t];
+            changedError += docFrequencyByIndex[t] * Math.abs(currentIdf(t) - idfByIndex[t]);
+        }
+        return (uniformShift * (totalPostings - changedPostings) + changedError) / totalPostings;
+    }
+
+    /**
+     * Recompute every IDF weight from the current corpus statistics (same
+     * weights as a fresh fit() on the current documents). Vectors built before
+     * the call must be transformed again.
+     */
+    public void reweight() {
+        for (int t = 0; t < getVocabSize(); t++) {
+            setIdf(t, currentIdf(t));
+        }
+        this.weightedDocuments = totalDocuments;
+        changedTerms.clear();
+    }
+
+    // Make room for a term id appended to the vocabulary
+    private void ensureCapacity(int id) {
+        if (id >= idfByIndex.length) {
+            int capacity = Math.max(16, id * 2);
+            idfByIndex = Arrays.copyOf(idfByIndex, capacity);
+            docFrequencyByIndex = Arrays.copyOf(docFrequencyByIndex, capacity);
+        }
+    }
+
+    private double currentIdf(int id) {
+        int df = docFrequencyByIndex[id];
+        return df == 0 ? 0.0 : Math.log((double) totalDocuments / (1 + df));
+    }
+
+    private void setIdf(int id, double idf) {
+        idfByIndex[id] = (float) idf;
+        changedTerms.clear(id);
+    }
+
+    private int[] distinctTerms(int[] termIds) {
+        return Arrays.stream(termIds).map(this::vectorIndex).filter(id -> id >= 0).distinct().toArray();
+    }
+
+    // Vector index of a term id (hashing mode ids carry the sign in the low bit)
+    int vectorIndex(int termId) {
+        return hashBits > 0 ? termId >>> 1 : termId;
+    }
+
+    /**
+     * Transform a document into a sparse TF-IDF vector.
+     * Only terms present in both the document and the vocabulary are stored.
+     */
+    public SparseVector transform(String text) {
+        return transform(toTermIds(text));
+    }
+
+    /**
+     * Transform an already tokenized document (see {@link #toTermIds(String)})
+     * into a sparse TF-IDF vector.
+     */
+    public SparseVector transform(int[] termIds) {
+        if (!isTrained) {
+            throw new IllegalStateException("Model has not been trained yet. Call fit() first.");
+        }
+
+        int vocabSize = getVocabSize();
+        if (termIds.length == 0) {
+            return SparseVector.empty(vocabSize);
         }
 
         // 1. Calculate Term Frequency (TF)
         // TF(t) = (Number of times term t appears in a document) / (Total number of
         // terms in the document)
-        Map<String, Integer> termCounts = new HashMap<>();
-        for (String token : tokens) {
-            if (vocabulary.containsKey(token)) {
-                termCounts.put(token, termCounts.getOrDefault(token, 0) + 1);
+        // Sorted copy of the ids: each run of ids with the same index is one
+        // term (or hash bucket) and its count; hashed terms count with their sign.
+        int[] sorted = termIds.clone();
+        Arrays.sort(sorted);
+
+        // 2. Compute weights: TF * IDF
+        int[] indices = new int[sorted.length];
+        double[] values = new double[sorted.length];
+        int nnz = 0;
+        for (int i = 0; i < sorted.length;) {
+            int index = vectorIndex(sorted[i]);
+            int count = 0;
+            for (; i < sorted.length && vectorIndex(sorted[i]) == index; i++)
+                count += hashBits > 0 && (sorted[i] & 1) != 0 ? -1 : 1;
+            if (index < 0)
+                continue; // Unknown words
+            double tf = (double) count / termIds.length;
+            double weight = tf * idfByIndex[index];
+            if (weight != 0.0) {
+                indices[nnz] = index;
+                values[nnz] = weight;
+                nnz++;
             }
         }
 
-        // 2. Compute vectors: TF * IDF
-        for (Map.Entry<String, Integer> entry : termCounts.entrySet()) {
-            String term = entry.getKey();
-            int count = entry.getValue();
-            int index = vocabulary.get(term);
+        return new SparseVector(vocabSize, Arrays.copyOf(indices, nnz), Arrays.copyOf(values, nnz));
+    }
+
+    /**
+     * Tokenize a document (see Analyzer) and map each token to its vocabulary
+     * index, in document order. Tokens outside the vocabulary map to -1 (they still
+     * count towards the document length). In hashing mode the id of a token
+     * is its bucket << 1 | sign bit.
+     */
+    public int[] toTermIds(String text) {
+        if (!isTrained) {
+            throw new IllegalStateException("Model has not been trained yet. Call fit() first.");
+        }
+        return Analyzer.get().termIds(text, vocabulary, hashBits, false);
+    }
 
-            double tf = (double) count / tokens.size();
-            double idf = idfWeights.getOrDefault(term, 0.0);
+    /**
+     * Hashing mode term id of {@code text[start, end)}: bucket << 1 | sign
+     * bit, the bucket from the low bits of the hash, the sign from the top bit.
+     */
+    static int featureId(CharSequence text, int start, int end, int hashBits) {
+        int h = 0x811c9dc5; // FNV-1a
+        for (int i = start; i < end; i++) {
+            h ^= text.charAt(i);
+            h *= 0x01000193;
+        }
+        // Murmur3 finalizer: every output bit depends on every input bit
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return (h & ((1 << hashBits) - 1)) << 1 | (h >>> 31);
+    }
 
-            vector[index] = tf * idf;
+    /**
+     * Write the vocabulary, IDF weights and corpus statistics (see
+     * ModelSnapshot).
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        int vocabSize = getVocabSize();
+        out.writeInt(hashBits);
+        out.writeInt(vocabSize);
+        for (int t = 0; t < vocabSize; t++) {
+            if (hashBits == 0)
+                ModelSnapshot.writeString(out, vocabulary.term(t));
+            out.writeFloat(idfByIndex[t]);
+            out.writeInt(docFrequencyByIndex[t]);
         }
+        out.writeInt(totalDocuments);
+        out.writeInt(weightedDocuments);
+        out.writeLong(totalPostings);
+        long[] changed = changedTerms.toLongArray();
+        out.writeInt(changed.length);
+        for (long word : changed)
+            out.writeLong(word);
+    }
 
-        return vector;
+    static TFIDFVectorizer readFrom(DataInputStream in) throws IOException {
+        TFIDFVectorizer v = new TFIDFVectorizer(in.readInt());
+        int vocabSize = in.readInt();
+        v.idfByIndex = new float[vocabSize];
+        v.docFrequencyByIndex = new int[vocabSize];
+        for (int t = 0; t < vocabSize; t++) {
+            if (v.hashBits == 0)
+                v.vocabulary.add(ModelSnapshot.readString(in));
+            v.idfByIndex[t] = in.readFloat();
+            v.docFrequencyByIndex[t] = in.readInt();
+        }
+        v.totalDocuments = in.readInt();
+        v.weightedDocuments = in.readInt();
+        v.totalPostings = in.readLong();
+        long[] changed = new long[in.readInt()];
+        for (int i = 0; i < changed.length; i++)
+            changed[i] = in.readLong();
+        v.changedTerms.or(BitSet.valueOf(changed));
+        v.isTrained = true;
+        return v;
     }
 
     /**
-     * Helper to get unique tokens from a document (for IDF mostly).
+     * Dimension of the vectors: vocabulary size, or number of buckets in
+     * hashing mode.
      */
-    private Set<String> getUniqueTokenArray(String text) {
-        return new HashSet<>(tokenize(text));
+    public int getVocabSize() {
+        return hashBits > 0 ? 1 << hashBits : vocabulary.size();
     }
 
     /**
-     * Tokenize text: lowercase, remove non-alphanumeric, remove stop words.
+     * Vector index of a single word, analyzed like document text (so
+     * "Mécanique" finds "mecanique"), or -1 if it is unknown or dropped by
+     * the analyzer (no allocation). In hashing mode, the word's bucket.
      */
-    private List<String> tokenize(String text) {
-        List<String> tokens = new ArrayList<>();
-        if (text == null || text.isEmpty())
-            return tokens;
+    public int termId(CharSequence term) {
+        Analyzer analyzer = Analyzer.get();
+        if (analyzer.analyze(term, vocabulary, hashBits, false) != 1)
+            return -1;
+        int id = analyzer.ids()[0];
+        return hashBits > 0 ? id >>> 1 : id;
+    }
 
-        // Normalize
-        String normalized = text.toLowerCase().replaceAll("[^a-z0-9\\sàâäçéèêëïîôùûüÿœæ]", " ");
+    /**
+     * The vocabulary (empty in hashing mode). Shared, not copied: it only
+     * grows, through addDocument.
+     */
+    TermDictionary terms() {
+        return vocabulary;
+    }
 
-        for (String word : normalized.split("\\s+")) {
-            if (word.length() > 2 && !STOP_WORDS.contains(word)) {
-                tokens.add(word);
-            }
-        }
-        return tokens;
+    /**
+     * @return log2 of the number of hash buckets, 0 for an exact vocabulary.
+     */
+    public int getHashBits() {
+        return hashBits;
     }
 
-    public int getVocabSize() {
-        return vocabSize;
+    public int getDocumentCount() {
+        return totalDocuments;
     }
 }
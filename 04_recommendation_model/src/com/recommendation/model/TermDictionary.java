@@ -0,0 +1,231 @@
+package com.recommendation.model;
+
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact term -> dense id dictionary.
+ *
+ * All terms are stored back to back in one char pool, addressed by an offsets
+ * array, and found through an open-addressing hash table of ids. There is no
+ * String, boxed Integer or map entry per term, and lookups take any
+ * CharSequence range, so a tokenizer can look terms up without creating
+ * substrings.
+ *
+ * Ids are assigned in insertion order and never change; terms cannot be
+ * removed (the vocabulary only grows between full refits).
+ */
+public final class TermDictionary {
+
+    private static final int EMPTY = -1;
+
+    private char[] chars = new char[256];
+    private int[] hashes = new int[16]; // Hash of each term, to rehash without rereading chars
+    private int[] offsets = new int[hashes.length + 1]; // offsets[id]..offsets[id + 1] in chars
+    private int[] table = newTable(32); // Term ids, EMPTY for free slots
+    private int size = 0;
+
+    public TermDictionary() {
+    }
+
+    public TermDictionary(Iterable<String> terms) {
+        for (String term : terms)
+            add(term);
+    }
+
+    /**
+     * @return The id of the term, or -1 if it is not in the dictionary.
+     */
+    public int get(CharSequence term) {
+        return get(term, 0, term.length());
+    }
+
+    /**
+     * Look up {@code text[start, end)} without copying it.
+     *
+     * @return The id of the term, or -1 if it is not in the dictionary.
+     */
+    public int get(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = table.length - 1;
+        for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+            int id = table[slot];
+            if (id == EMPTY)
+                return -1;
+            if (hashes[id] == hash && equalsTerm(id, text, start, end))
+                return id;
+        }
+    }
+
+    /**
+     * Add a term if it is missing.
+     *
+     * @return The id of the term (existing or new).
+     */
+    public int add(CharSequence term) {
+        return add(term, 0, term.length());
+    }
+
+    /**
+     * Add {@code text[start, end)} if it is missing.
+     *
+     * @return The id of the term (existing or new).
+     */
+    public int add(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = table.length - 1;
+        int slot = hash & mask;
+        for (;; slot = (slot + 1) & mask) {
+            int id = table[slot];
+            if (id == EMPTY)
+                break;
+            if (hashes[id] == hash && equalsTerm(id, text, start, end))
+                return id;
+        }
+
+        int id = size++;
+        if (id == hashes.length) {
+            hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            offsets = Arrays.copyOf(offsets, hashes.length + 1);
+        }
+        int length = end - start;
+        int from = offsets[id];
+        if (from + length > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, from + length));
+        for (int i = 0; i < length; i++)
+            chars[from + i] = text.charAt(start + i);
+        offsets[id + 1] = from + length;
+        hashes[id] = hash;
+
+        table[slot] = id;
+        if (size * 2 > table.length)
+            rehash(table.length * 2);
+        return id;
+    }
+
+    /**
+     * Add every term of another dictionary, in its id order.
+     *
+     * @return The id here of each of its terms.
+     */
+    public int[] addAll(TermDictionary other) {
+        int[] ids = new int[other.size];
+        CharBuffer pool = CharBuffer.wrap(other.chars);
+        for (int id = 0; id < other.size; id++)
+            ids[id] = add(pool, other.offsets[id], other.offsets[id + 1]);
+        return ids;
+    }
+
+    /**
+     * The term with the given id (allocates a String).
+     */
+    public String term(int id) {
+        if (id < 0 || id >= size)
+            throw new IndexOutOfBoundsException("Term id " + id + " out of range [0, " + size + ")");
+        return new String(chars, offsets[id], offsets[id + 1] - offsets[id]);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Whether the term with the given id contains {@code s}, read in place.
+     */
+    boolean termContains(int id, CharSequence s) {
+        int last = offsets[id + 1] - s.length();
+        for (int start = offsets[id]; start <= last; start++) {
+            int i = 0;
+            while (i < s.length() && chars[start + i] == s.charAt(i))
+                i++;
+            if (i == s.length())
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * A view reading terms in place, see {@link TermView}.
+     */
+    TermView view() {
+        return new TermView();
+    }
+
+    /**
+     * The chars of one term as a CharSequence without copying them, pointed
+     * at a term with {@link #of(int)}: one view serves a whole search.
+     */
+    final class TermView implements CharSequence {
+        private int from;
+        private int length;
+
+        TermView of(int id) {
+            from = offsets[id];
+            length = offsets[id + 1] - from;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return chars[from + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, from + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, from, length);
+        }
+    }
+
+    /**
+     * Approximate memory held by the dictionary arrays, in bytes.
+     */
+    public long memoryBytes() {
+        return 2L * chars.length + 4L * offsets.length + 4L * hashes.length + 4L * table.length;
+    }
+
+    private boolean equalsTerm(int id, CharSequence text, int start, int end) {
+        int from = offsets[id];
+        if (offsets[id + 1] - from != end - start)
+            return false;
+        for (int i = start; i < end; i++) {
+            if (chars[from++] != text.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private void rehash(int capacity) {
+        table = newTable(capacity);
+        int mask = capacity - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != EMPTY)
+                slot = (slot + 1) & mask;
+            table[slot] = id;
+        }
+    }
+
+    private static int[] newTable(int capacity) {
+        int[] table = new int[capacity];
+        Arrays.fill(table, EMPTY);
+        return table;
+    }
+
+    // String.hashCode-style hash, with the high bits mixed in for the power-of-two table
+    private static int hash(CharSequence text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + text.charAt(i);
+        return h ^ (h >>> 16);
+    }
+}
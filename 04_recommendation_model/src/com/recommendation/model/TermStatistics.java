@@ -0,0 +1,195 @@
+package com.recommendation.model;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Corpus statistics a TF-IDF model is fitted from: the vocabulary (ids in
+ * order of first appearance), the document frequency of each term and the
+ * number of documents.
+ *
+ * Statistics of separate parts of a corpus (chunks, CSV files, shards) can be
+ * counted independently and merged. Merging the parts in corpus order gives
+ * the same term ids as counting the whole corpus in one pass. Not
+ * thread-safe: each thread counts into its own instance.
+ *
+ * In feature hashing mode (see TFIDFVectorizer) the counts are per hash
+ * bucket and no vocabulary is kept. Only the buckets used are stored (open
+ * addressing), so a chunk holds as many counts as its documents have distinct
+ * buckets rather than 2^hashBits.
+ */
+public final class TermStatistics {
+
+    private final TermDictionary terms = new TermDictionary(); // Empty in hashing mode
+    private final int hashBits; // 0 for an exact vocabulary
+    private int[] documentFrequency; // Per term id, or per slot of usedBuckets in hashing mode
+    private int[] usedBuckets; // Hashing mode: bucket + 1 per slot, 0 for a free slot
+    private int usedBucketCount;
+    private int documentCount;
+
+    public TermStatistics() {
+        this(0);
+    }
+
+    /**
+     * @param hashBits Count per bucket of 2^hashBits, or 0 for an exact
+     *                 vocabulary (see TFIDFVectorizer).
+     */
+    public TermStatistics(int hashBits) {
+        this.hashBits = hashBits;
+        this.documentFrequency = new int[16];
+        this.usedBuckets = hashBits > 0 ? new int[16] : null;
+    }
+
+    /**
+     * Count the distinct terms of one more document.
+     */
+    public void add(String document) {
+        documentCount++;
+        Analyzer analyzer = Analyzer.get();
+        int count = analyzer.analyze(document, terms, hashBits, true);
+        int[] ids = analyzer.ids();
+        if (hashBits > 0) {
+            for (int k = 0; k < count; k++)
+                ids[k] >>>= 1; // Bucket
+        } else {
+            grow(terms.size());
+        }
+
+        // Each distinct term once: sorted, repeats are adjacent
+        Arrays.sort(ids, 0, count);
+        for (int k = 0; k < count; k++) {
+            if (k == 0 || ids[k] != ids[k - 1])
+                increment(ids[k], 1);
+        }
+    }
+
+    /**
+     * Add the counts of documents that come after the ones counted here.
+     *
+     * @return This instance.
+     */
+    public TermStatistics merge(TermStatistics other) {
+        if (other.hashBits != hashBits)
+            throw new IllegalArgumentException("Cannot merge statistics of different hashing modes");
+        if (hashBits > 0) {
+            for (int slot = 0; slot < other.usedBuckets.length; slot++) {
+                if (other.usedBuckets[slot] != 0)
+                    increment(other.usedBuckets[slot] - 1, other.documentFrequency[slot]);
+            }
+            documentCount += other.documentCount;
+            return this;
+        }
+        int[] ids = terms.addAll(other.terms);
+        grow(terms.size());
+        for (int t = 0; t < ids.length; t++)
+            documentFrequency[ids[t]] += other.documentFrequency[t];
+        documentCount += other.documentCount;
+        return this;
+    }
+
+    /**
+     * Count a stream of documents, in parallel chunks on the common pool.
+     * Chunks are merged in stream order.
+     */
+    public static TermStatistics of(Stream<String> documents) {
+        return of(documents, 0);
+    }
+
+    /**
+     * @param hashBits See {@link #TermStatistics(int)}.
+     */
+    public static TermStatistics of(Stream<String> documents, int hashBits) {
+        return documents.parallel().collect(() -> new TermStatistics(hashBits), TermStatistics::add,
+                TermStatistics::merge);
+    }
+
+    /**
+     * Count documents as they are read (for example lines of a large file):
+     * only the chunks being counted are held in memory.
+     */
+    public static TermStatistics of(Iterator<String> documents) {
+        return of(documents, 0);
+    }
+
+    public static TermStatistics of(Iterator<String> documents, int hashBits) {
+        return of(StreamSupport.stream(Spliterators.spliteratorUnknownSize(documents, Spliterator.ORDERED), false),
+                hashBits);
+    }
+
+    public int getDocumentCount() {
+        return documentCount;
+    }
+
+    /**
+     * Number of distinct terms, or of used buckets in hashing mode.
+     */
+    public int getTermCount() {
+        return hashBits > 0 ? usedBucketCount : terms.size();
+    }
+
+    public int getHashBits() {
+        return hashBits;
+    }
+
+    TermDictionary terms() {
+        return terms;
+    }
+
+    int documentFrequency(int id) {
+        if (hashBits == 0)
+            return documentFrequency[id];
+        int slot = slot(id);
+        return usedBuckets[slot] != 0 ? documentFrequency[slot] : 0;
+    }
+
+    private void increment(int id, int count) {
+        if (hashBits == 0) {
+            documentFrequency[id] += count;
+            return;
+        }
+        int slot = slot(id);
+        if (usedBuckets[slot] == 0) {
+            if (2 * (usedBucketCount + 1) > usedBuckets.length) { // Keep at most half full
+                rehash();
+                slot = slot(id);
+            }
+            usedBuckets[slot] = id + 1;
+            usedBucketCount++;
+        }
+        documentFrequency[slot] += count;
+    }
+
+    // Slot of a bucket in usedBuckets: its own, or the free one it would take
+    // (buckets are hashes already, their low bits are spread)
+    private int slot(int bucket) {
+        int mask = usedBuckets.length - 1;
+        int slot = bucket & mask;
+        while (usedBuckets[slot] != 0 && usedBuckets[slot] != bucket + 1)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash() {
+        int[] oldBuckets = usedBuckets;
+        int[] oldFrequency = documentFrequency;
+        usedBuckets = new int[oldBuckets.length * 2];
+        documentFrequency = new int[oldBuckets.length * 2];
+        for (int s = 0; s < oldBuckets.length; s++) {
+            if (oldBuckets[s] != 0) {
+                int slot = slot(oldBuckets[s] - 1);
+                usedBuckets[slot] = oldBuckets[s];
+                documentFrequency[slot] = oldFrequency[s];
+            }
+        }
+    }
+
+    private void grow(int capacity) {
+        if (capacity > documentFrequency.length)
+            documentFrequency = Arrays.copyOf(documentFrequency, Math.max(capacity, documentFrequency.length * 2));
+    }
+}
@@ -0,0 +1,134 @@
+package com.recommendation.model;
+
+/**
+ * Bounded min-heap of (product ordinal, score) pairs backed by primitive arrays.
+ * Keeps the k best entries seen so far; the worst kept entry sits at the root.
+ *
+ * Ordering: higher score is better, ties go to the lower ordinal (catalogue
+ * order), matching a stable sort of the products by descending score.
+ */
+public class TopKHeap {
+
+    private final int[] ordinals;
+    private final double[] scores;
+    private int size = 0;
+
+    public TopKHeap(int capacity) {
+        this.ordinals = new int[Math.max(0, capacity)];
+        this.scores = new double[Math.max(0, capacity)];
+    }
+
+    /**
+     * Offer an entry. It is kept if the heap is not full or it beats the worst
+     * kept entry.
+     *
+     * @return true if the entry was kept.
+     */
+    public boolean offer(int ordinal, double score) {
+        if (ordinals.length == 0)
+            return false;
+        if (size < ordinals.length) {
+            ordinals[size] = ordinal;
+            scores[size] = score;
+            siftUp(size++);
+            return true;
+        }
+        if (!isWorse(ordinals[0], scores[0], ordinal, score))
+            return false;
+        ordinals[0] = ordinal;
+        scores[0] = score;
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * Offer every entry of another heap (used to merge per-shard top-k lists).
+     */
+    public void offerAll(TopKHeap other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ordinals[i], other.scores[i]);
+        }
+    }
+
+    public boolean isFull() {
+        return size == ordinals.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Score of the worst kept entry (the current k-th best score).
+     */
+    public double minScore() {
+        return size > 0 ? scores[0] : Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Remove all entries, best first.
+     *
+     * @return Ordinals and scores sorted from best to worst, each array of
+     *         length {@link #size()} before the call.
+     */
+    public int[] drainOrdinals(double[] scoresOut) {
+        int n = size;
+        int[] result = new int[n];
+        // Popping the root repeatedly yields worst-first order
+        for (int i = n - 1; i >= 0; i--) {
+            result[i] = ordinals[0];
+            scoresOut[i] = scores[0];
+            size--;
+            if (size > 0) {
+                ordinals[0] = ordinals[size];
+                scores[0] = scores[size];
+                siftDown(0);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * True if entry a ranks below entry b.
+     */
+    private static boolean isWorse(int ordA, double scoreA, int ordB, double scoreB) {
+        if (scoreA != scoreB)
+            return scoreA < scoreB;
+        return ordA > ordB;
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!isWorse(ordinals[i], scores[i], ordinals[parent], scores[parent]))
+                break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size)
+                break;
+            int worst = left;
+            int right = left + 1;
+            if (right < size && isWorse(ordinals[right], scores[right], ordinals[left], scores[left]))
+                worst = right;
+            if (!isWorse(ordinals[worst], scores[worst], ordinals[i], scores[i]))
+                break;
+            swap(i, worst);
+            i = worst;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int o = ordinals[i];
+        ordinals[i] = ordinals[j];
+        ordinals[j] = o;
+        double s = scores[i];
+        scores[i] = scores[j];
+        scores[j] = s;
+    }
+}
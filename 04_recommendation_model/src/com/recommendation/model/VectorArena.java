@@ -0,0 +1,151 @@
+package com.recommendation.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Rows of (id, weight) entries packed into one contiguous off-heap buffer:
+ * direct memory, or a memory-mapped file when a backing directory is given.
+ * Used for inverted index postings (row = term, id = product).
+ *
+ * Layout (struct of arrays, native byte order):
+ * - row start offsets, rows + 1 ints (entries of row r are [start(r), end(r)))
+ * - all ids, one int per entry
+ * - all weights, one double per entry (8-byte aligned)
+ *
+ * The Java heap only holds this object and the buffer header, so GC work no
+ * longer grows with the number of vectors. A single arena is limited to 2 GB
+ * (ByteBuffer indexing), about 170 million entries.
+ *
+ * An arena replaced by a new one is {@link #close() closed}, which deletes its
+ * backing file. Files of arenas still open at exit are deleted then.
+ */
+public final class VectorArena {
+
+    private ByteBuffer buffer; // Null once closed
+    private final int rows;
+    private final int idsBase;
+    private final int valuesBase;
+    private final File file; // Backing file, null for direct memory
+
+    /**
+     * Allocate an arena for rows of the given lengths. Entries are filled with
+     * {@link #set(int, int, double)} before the arena is shared.
+     *
+     * @param backingDir Directory for the memory-mapped file, or null for
+     *                   direct memory.
+     */
+    VectorArena(int[] rowLengths, File backingDir) {
+        long entries = 0;
+        for (int length : rowLengths)
+            entries += length;
+        this.rows = rowLengths.length;
+        long ids = 4L * (rows + 1);
+        long values = (ids + 4L * entries + 7) & ~7L;
+        long size = values + 8L * entries;
+        if (size > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Vector arena too large: " + size + " bytes (limit 2 GB)");
+        this.idsBase = (int) ids;
+        this.valuesBase = (int) values;
+
+        if (backingDir == null) {
+            this.file = null;
+            this.buffer = ByteBuffer.allocateDirect((int) size);
+        } else {
+            try {
+                this.file = File.createTempFile("vectors", ".arena", backingDir);
+                OpenFiles.add(file);
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size); // Stays valid after close
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot map vector arena in " + backingDir, e);
+            }
+        }
+        buffer.order(ByteOrder.nativeOrder());
+
+        int offset = 0;
+        for (int r = 0; r < rows; r++) {
+            buffer.putInt(r << 2, offset);
+            offset += rowLengths[r];
+        }
+        buffer.putInt(rows << 2, offset);
+    }
+
+    void set(int entry, int id, double value) {
+        buffer.putInt(idsBase + (entry << 2), id);
+        buffer.putDouble(valuesBase + (entry << 3), value);
+    }
+
+    public int rowCount() {
+        return rows;
+    }
+
+    /** Position of the first entry of a row. */
+    public int start(int row) {
+        return buffer.getInt(row << 2);
+    }
+
+    /** Position after the last entry of a row. */
+    public int end(int row) {
+        return buffer.getInt((row + 1) << 2);
+    }
+
+    public int id(int entry) {
+        return buffer.getInt(idsBase + (entry << 2));
+    }
+
+    public double value(int entry) {
+        return buffer.getDouble(valuesBase + (entry << 3));
+    }
+
+    public long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Backing file, or null for direct memory.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Delete the backing file and drop the buffer (the memory is released
+     * once the buffer is garbage collected). The arena must not be read
+     * afterwards.
+     */
+    public void close() {
+        buffer = null;
+        if (file != null) {
+            OpenFiles.remove(file);
+            if (!file.delete() && file.exists())
+                file.deleteOnExit(); // Still mapped (Windows): deleted at exit instead
+        }
+    }
+
+    // Backing files of open arenas, deleted by one shutdown hook
+    private static final class OpenFiles {
+        private static final Set<File> FILES = ConcurrentHashMap.newKeySet();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> FILES.forEach(File::delete), "vector-arena-cleanup"));
+        }
+
+        static void add(File file) {
+            FILES.add(file);
+        }
+
+        static void remove(File file) {
+            FILES.remove(file);
+        }
+    }
+}
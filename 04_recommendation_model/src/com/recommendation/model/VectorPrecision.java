@@ -0,0 +1,37 @@
+package com.recommendation.model;
+
+/**
+ * Storage precision of TF-IDF weights (product vectors and inverted index
+ * postings). See QuantizedVectors.
+ */
+public enum VectorPrecision {
+    /** Full precision, 8 bytes per weight. */
+    DOUBLE(8),
+    /** IEEE half precision, 2 bytes per weight (about 3 significant digits). */
+    FLOAT16(2),
+    /** One signed byte per weight, scaled per vector by its largest weight / 127. */
+    INT8(1);
+
+    private final int bytesPerWeight;
+
+    VectorPrecision(int bytesPerWeight) {
+        this.bytesPerWeight = bytesPerWeight;
+    }
+
+    public int getBytesPerWeight() {
+        return bytesPerWeight;
+    }
+
+    /**
+     * Scale of a vector's weights: the stored code of a weight is
+     * weight / scale.
+     */
+    float scaleOf(SparseVector v) {
+        if (this != INT8)
+            return 1f;
+        double max = 0.0;
+        for (int i = 0; i < v.size(); i++)
+            max = Math.max(max, Math.abs(v.valueAt(i)));
+        return max == 0.0 ? 1f : (float) (max / 127);
+    }
+}
@@ -1,5 +1,6 @@
 package com.recommendation.ui;
 
+import com.recommendation.model.ModelSnapshot;
 import com.recommendation.model.RecommendationEngine;
 import com.recommendation.model.RecommendationResult;
 import com.recommendation.preprocessing.DataCleaner;
@@ -10,6 +11,8 @@ import com.recommendation.ui.core.ComparisonManager;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
 import java.awt.*;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
@@ -21,6 +24,9 @@ import java.util.Map;
  */
 public class MainFrame extends JFrame {
 
+    private static final String SNAPSHOT_FILE = "recommendation_model.snapshot"; // Trained model cache
+    private static final int MAX_COMPLETIONS = 8; // Typeahead suggestions under the search field
+
     private RecommendationEngine engine;
     private SearchPanel searchPanel;
     private ResultsPanel resultsPanel;
@@ -186,9 +192,9 @@ public class MainFrame extends JFrame {
     private void loadDataAsync() {
         resultsPanel.showLoading();
 
-        SwingWorker<List<Product>, Void> worker = new SwingWorker<List<Product>, Void>() {
+        SwingWorker<RecommendationEngine, Void> worker = new SwingWorker<RecommendationEngine, Void>() {
             @Override
-            protected List<Product> doInBackground() throws Exception {
+            protected RecommendationEngine doInBackground() throws Exception {
                 // Load all CSV files - SPECIFIC CATEGORIES ONLY
                 String dataDir = "..\\02_data_collection\\raw\\";
 
@@ -200,19 +206,39 @@ public class MainFrame extends JFrame {
                         // Product files removed as requested
                 };
 
-                return DataCleaner.processMultipleCSVs(csvFiles);
+                // Reuse the trained model if the CSV files have not changed
+                File snapshotFile = new File(SNAPSHOT_FILE);
+                String sourceHash = ModelSnapshot.hashSources(csvFiles);
+                RecommendationEngine loaded = RecommendationEngine.loadSnapshot(snapshotFile, sourceHash);
+                if (loaded != null) {
+                    System.out.println("Loaded model snapshot " + snapshotFile);
+                    return loaded;
+                }
+
+                List<Product> products = DataCleaner.processMultipleCSVs(csvFiles);
+                RecommendationEngine trained = new RecommendationEngine(products);
+                try {
+                    trained.saveSnapshot(snapshotFile, sourceHash);
+                } catch (IOException e) {
+                    System.out.println("Could not save model snapshot: " + e.getMessage()); // Next start retrains
+                }
+                return trained;
             }
 
             @Override
             protected void done() {
                 try {
-                    List<Product> products = get();
-                    totalProducts = products.size();
-                    engine = new RecommendationEngine(products);
+                    engine = get();
+                    totalProducts = engine.getTotalProducts();
 
                     // Update categories in search panel
                     searchPanel.updateCategories(engine.getCategoryStats());
 
+                    // Typeahead from the title index (never a full search per keystroke)
+                    RecommendationEngine loadedEngine = engine;
+                    searchPanel.setCompletionProvider(
+                            prefix -> loadedEngine.getAutocompleteIndex().complete(prefix, MAX_COMPLETIONS));
+
                     // Update status bar
                     updateStatusBar();
 
@@ -220,7 +246,7 @@ public class MainFrame extends JFrame {
                     resultsPanel.displayResults(null, 0, Double.MAX_VALUE);
 
                     JOptionPane.showMessageDialog(MainFrame.this,
-                            String.format("✅ Successfully loaded %d products!\n\nReady to search.", products.size()),
+                            String.format("✅ Successfully loaded %d products!\n\nReady to search.", totalProducts),
                             "Data Loaded",
                             JOptionPane.INFORMATION_MESSAGE);
 
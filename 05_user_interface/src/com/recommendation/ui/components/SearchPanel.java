@@ -1,11 +1,19 @@
 package com.recommendation.ui.components;
 
 import com.recommendation.ui.UIStyles;
+import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 import javax.swing.*;
 import javax.swing.border.EmptyBorder;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
+import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 
 /**
  * Enhanced SearchPanel with clearly visible input fields and better sizing.
@@ -22,7 +30,17 @@ public class SearchPanel extends JPanel {
     private JLabel statsLabel;
     private JPanel contentPanel;
 
+    // Typeahead: completions shown under the search field as the user types
+    private static final int MIN_COMPLETION_PREFIX = 2; // Chars typed before completions show
+    private Function<String, List<String>> completionProvider; // Null until data is loaded
+    private final ActionListener searchAction;
+    private JPopupMenu completionPopup;
+    private JList<String> completionList;
+    private DefaultListModel<String> completionModel;
+    private boolean applyingCompletion = false; // Text set from a completion, don't complete it again
+
     public SearchPanel(ActionListener searchAction) {
+        this.searchAction = searchAction;
         setLayout(new BorderLayout());
         setBackground(UIStyles.getBackgroundSecondary());
 
@@ -91,7 +109,12 @@ public class SearchPanel extends JPanel {
         searchButton.addActionListener(searchAction);
         contentPanel.add(searchButton);
 
-        searchField.addActionListener(searchAction);
+        // Enter takes the highlighted completion (if any), then searches
+        searchField.addActionListener(e -> {
+            acceptCompletion();
+            searchAction.actionPerformed(e);
+        });
+        createCompletionPopup();
         minPriceField.addActionListener(searchAction);
         maxPriceField.addActionListener(searchAction);
 
@@ -104,6 +127,114 @@ public class SearchPanel extends JPanel {
         UIStyles.addThemeListener(this::refreshTheme);
     }
 
+    /**
+     * Source of typeahead completions for a prefix. Called on the event
+     * thread at each keystroke, so it must be fast (an index lookup, not a
+     * search).
+     */
+    public void setCompletionProvider(Function<String, List<String>> completionProvider) {
+        this.completionProvider = completionProvider;
+    }
+
+    private void createCompletionPopup() {
+        completionModel = new DefaultListModel<>();
+        completionList = new JList<>(completionModel);
+        completionList.setFont(UIStyles.FONT_BODY);
+        completionList.setFocusable(false); // Typing stays in the search field
+        completionList.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        completionList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (completionList.locationToIndex(e.getPoint()) >= 0) {
+                    acceptCompletion();
+                    searchAction.actionPerformed(
+                            new ActionEvent(searchField, ActionEvent.ACTION_PERFORMED, "completion"));
+                }
+            }
+        });
+
+        completionPopup = new JPopupMenu();
+        completionPopup.setFocusable(false);
+        completionPopup.setLayout(new BorderLayout());
+        completionPopup.add(completionList, BorderLayout.CENTER);
+
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(SearchPanel.this::updateCompletions);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                SwingUtilities.invokeLater(SearchPanel.this::updateCompletions);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+            }
+        });
+
+        // Arrow keys move through the completions, Escape closes them
+        bindKey(KeyEvent.VK_DOWN, "completion-next", () -> moveCompletion(1));
+        bindKey(KeyEvent.VK_UP, "completion-previous", () -> moveCompletion(-1));
+        bindKey(KeyEvent.VK_ESCAPE, "completion-close", () -> completionPopup.setVisible(false));
+    }
+
+    private void bindKey(int keyCode, String name, Runnable action) {
+        searchField.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(keyCode, 0), name);
+        searchField.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    private void updateCompletions() {
+        String prefix = getSearchQuery();
+        if (applyingCompletion || completionProvider == null || prefix.length() < MIN_COMPLETION_PREFIX
+                || !searchField.isShowing()) {
+            completionPopup.setVisible(false);
+            return;
+        }
+        List<String> completions = completionProvider.apply(prefix);
+        if (completions.isEmpty()) {
+            completionPopup.setVisible(false);
+            return;
+        }
+
+        completionModel.clear();
+        for (String completion : completions)
+            completionModel.addElement(completion);
+        completionList.setBackground(UIStyles.getBackgroundInput());
+        completionList.setForeground(UIStyles.getTextPrimary());
+        completionList.setSelectionBackground(UIStyles.getAccentPrimary());
+        completionList.setSelectionForeground(UIStyles.getTextOnAccent());
+        completionList.setVisibleRowCount(completions.size());
+        completionPopup.setPopupSize(searchField.getWidth(), completionList.getPreferredSize().height + 4);
+        if (!completionPopup.isVisible())
+            completionPopup.show(searchField, 0, searchField.getHeight());
+    }
+
+    private void moveCompletion(int step) {
+        if (!completionPopup.isVisible() || completionModel.isEmpty())
+            return;
+        int index = completionList.getSelectedIndex() + step;
+        index = Math.max(0, Math.min(completionModel.size() - 1, index));
+        completionList.setSelectedIndex(index);
+        completionList.ensureIndexIsVisible(index);
+    }
+
+    // Put the highlighted completion in the search field and close the popup
+    private void acceptCompletion() {
+        if (completionPopup.isVisible() && completionList.getSelectedValue() != null) {
+            applyingCompletion = true;
+            searchField.setText(completionList.getSelectedValue());
+            SwingUtilities.invokeLater(() -> applyingCompletion = false); // After the queued updates
+        }
+        completionPopup.setVisible(false);
+    }
+
     private JLabel createSectionLabel(String text) {
         JLabel label = UIStyles.createLabel(text, UIStyles.FONT_SUBHEADING, UIStyles.getTextSecondary());
         label.setAlignmentX(0.5f);
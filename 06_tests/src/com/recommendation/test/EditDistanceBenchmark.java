@@ -0,0 +1,67 @@
+package com.recommendation.test;
+
+import com.recommendation.model.EditDistance;
+
+import java.util.Random;
+
+/**
+ * Micro-benchmark: bit-parallel bounded edit distance vs the reference DP.
+ * Run with: java -cp "06_tests\bin;04_recommendation_model\bin"
+ * com.recommendation.test.EditDistanceBenchmark
+ */
+public class EditDistanceBenchmark {
+
+    private static final int WORDS = 20000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        Random random = new Random(7);
+        String[] keywords = { "samsung", "casque", "clavier", "bluetooth", "ordinateur" };
+        String[] words = new String[WORDS];
+        for (int i = 0; i < WORDS; i++) {
+            if (i % 10 == 0) {
+                // Sprinkle in typos of the keywords so both paths find matches
+                String keyword = keywords[random.nextInt(keywords.length)];
+                int pos = random.nextInt(keyword.length());
+                words[i] = keyword.substring(0, pos) + keyword.substring(pos + 1);
+            } else {
+                words[i] = randomWord(random, 3 + random.nextInt(10));
+            }
+        }
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            int dpMatches = 0;
+            for (String keyword : keywords) {
+                int maxEdits = keyword.length() <= 6 ? 1 : 2;
+                for (String word : words) {
+                    if (EditDistance.levenshtein(word, keyword) <= maxEdits)
+                        dpMatches++;
+                }
+            }
+            long dpTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int myersMatches = 0;
+            for (String keyword : keywords) {
+                int maxEdits = keyword.length() <= 6 ? 1 : 2;
+                for (String word : words) {
+                    if (EditDistance.withinDistance(word, keyword, maxEdits))
+                        myersMatches++;
+                }
+            }
+            long myersTime = System.nanoTime() - start;
+
+            System.out.printf("Round %d: DP %.2f ms, bit-parallel %.2f ms (%.1fx), matches %d/%d%n",
+                    round + 1, dpTime / 1e6, myersTime / 1e6, (double) dpTime / myersTime,
+                    dpMatches, myersMatches);
+        }
+    }
+
+    private static String randomWord(Random random, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            sb.append((char) ('a' + random.nextInt(26)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,50 @@
+package com.recommendation.test;
+
+import com.recommendation.model.EditDistance;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Random;
+
+public class EditDistanceTest {
+
+    @Test
+    public void testKnownDistances() {
+        assertEquals(3, EditDistance.distance("kitten", "sitting"));
+        assertEquals(1, EditDistance.distance("samsung", "samsng"));
+        assertEquals(0, EditDistance.distance("clavier", "clavier"));
+        assertEquals(6, EditDistance.distance("", "casque"));
+        assertEquals(2, EditDistance.distance("écran", "ecrn"));
+    }
+
+    @Test
+    public void testBoundedDistanceStopsAtBound() {
+        assertEquals(2, EditDistance.boundedDistance("kitten", "sitting", 1));
+        assertEquals(3, EditDistance.boundedDistance("kitten", "sitting", 3));
+        assertTrue(EditDistance.withinDistance("galaxy", "galaxi", 1));
+        assertFalse(EditDistance.withinDistance("galaxy", "iphone", 2));
+    }
+
+    @Test
+    public void testMatchesReferenceDp() {
+        Random random = new Random(42);
+        String alphabet = "abcdeé";
+        for (int run = 0; run < 2000; run++) {
+            String a = randomWord(random, alphabet, random.nextInt(70));
+            String b = randomWord(random, alphabet, random.nextInt(70));
+            int expected = EditDistance.levenshtein(a, b);
+            assertEquals(expected, EditDistance.distance(a, b), a + " / " + b);
+
+            int bound = random.nextInt(4);
+            int bounded = EditDistance.boundedDistance(a, b, bound);
+            assertEquals(expected <= bound ? expected : bound + 1, bounded, a + " / " + b);
+        }
+    }
+
+    private String randomWord(Random random, String alphabet, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return sb.toString();
+    }
+}
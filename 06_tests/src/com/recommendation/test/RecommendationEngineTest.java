@@ -1,12 +1,23 @@
 package com.recommendation.test;
 
+import com.recommendation.model.AutocompleteIndex;
+import com.recommendation.model.Query;
+import com.recommendation.model.RankOverlap;
 import com.recommendation.model.RecommendationEngine;
 import com.recommendation.model.RecommendationResult;
+import com.recommendation.model.ScoringModel;
+import com.recommendation.model.StageTimings;
+import com.recommendation.model.VectorPrecision;
 import com.recommendation.preprocessing.Product;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -49,6 +60,78 @@ public class RecommendationEngineTest {
         assertEquals("p1", results.get(0).getProductId());
     }
 
+    @Test
+    public void testFeatureHashingEngine() {
+        RecommendationEngine hashing = new RecommendationEngine(mockProducts, 12);
+        hashing.addProduct(new Product("p4", "Lenovo ThinkPad X1", 1400.0, "link4", "img4", "Laptop", "Laptops"));
+
+        List<RecommendationResult> results = hashing.getRecommendations("Samsung", 0, 2000, "All Categories", 5);
+        assertEquals("p1", results.get(0).getProductId());
+        results = hashing.getRecommendations("ThinkPad", 0, 2000, "All Categories", 5);
+        assertEquals("p4", results.get(0).getProductId());
+    }
+
+    @Test
+    public void testBm25fScoring() {
+        RecommendationEngine bm25 = new RecommendationEngine(mockProducts);
+        bm25.setScoringModel(ScoringModel.BM25F);
+        assertEquals(ScoringModel.BM25F, bm25.getScoringModel());
+
+        List<RecommendationResult> results = bm25.getRecommendations("Samsung", 0, 2000, "All Categories", 5);
+        assertEquals("p1", results.get(0).getProductId());
+        results = bm25.getRecommendations("Dell Laptop", 0, 2000, "All Categories", 5);
+        assertEquals("p3", results.get(0).getProductId());
+        for (RecommendationResult r : results)
+            assertTrue(r.getScore() > 0 && r.getScore() <= 1.0);
+
+        // Weights follow catalogue changes
+        bm25.addProduct(new Product("p4", "Lenovo ThinkPad X1", 1400.0, "link4", "img4", "Laptop", "Laptops"));
+        assertEquals("p4", bm25.getRecommendations("ThinkPad", 0, 2000, "All Categories", 5).get(0).getProductId());
+    }
+
+    @Test
+    public void testStagedRanking() {
+        List<RecommendationResult> full = engine.getRecommendations("", 0, 2000, "All Categories", 3);
+        StageTimings timings = engine.getLastStageTimings();
+        assertEquals(3, timings.getCandidateCount());
+        assertEquals(3, timings.getRecalledCount());
+        assertFalse(timings.isBudgetExceeded());
+
+        // The recall keeps at least as many candidates as results asked for
+        engine.setRecallSize(1);
+        List<RecommendationResult> recalled = engine.getRecommendations("", 0, 2000, "All Categories", 3);
+        assertEquals(full.size(), recalled.size());
+        assertEquals("p1", engine.getRecommendations("Samsung", 0, 2000, "All Categories", 1).get(0).getProductId());
+        assertEquals(1, engine.getLastStageTimings().getRecalledCount());
+
+        // Exhausted budgets still return the best candidates found
+        engine.setStageBudgets(Duration.ofNanos(1), Duration.ofNanos(1));
+        assertEquals("p1", engine.getRecommendations("Samsung", 0, 2000, "All Categories", 1).get(0).getProductId());
+    }
+
+    @Test
+    public void testAutocomplete() {
+        AutocompleteIndex index = engine.getAutocompleteIndex();
+        assertEquals(List.of("Samsung Galaxy S23"), index.complete("GAL", 5)); // Any word, any case
+        assertEquals(List.of("iPhone 15 Pro"), index.complete("15 p", 5));
+        assertTrue(index.complete("", 5).isEmpty());
+        assertTrue(index.complete("xyz", 5).isEmpty());
+
+        // Most reviewed first, up to the limit
+        AutocompleteIndex weighted = new AutocompleteIndex(List.of("Casque Audio", "Casque Écouteurs", "Clavier"),
+                new double[] { 1, 5, 9 });
+        assertEquals(List.of("Casque Écouteurs", "Casque Audio"), weighted.complete("cas", 5));
+        assertEquals(List.of("Clavier"), weighted.complete("c", 1));
+        assertEquals(List.of("Casque Écouteurs"), weighted.complete("ecou", 5));
+
+        // Rebuilt in the background after catalogue changes
+        engine.addProduct(new Product("p4", "Galaxy Tab S9", 700.0, "link4", "img4", "Tablet", "Tablets"));
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+            while (engine.getAutocompleteIndex().complete("gal", 5).size() != 2)
+                Thread.sleep(10);
+        });
+    }
+
     @Test
     public void testFilterByCategory() {
         List<RecommendationResult> results = engine.getRecommendations("Phone", 0, 2000, "Laptops", 5);
@@ -56,4 +139,230 @@ public class RecommendationEngineTest {
         // Depending on TF-IDF, it might be empty if score < 0.15
         assertTrue(results.isEmpty(), "Should not find 'Phone' in 'Laptops' category if score is low");
     }
+
+    @Test
+    public void testTopKLimitAndRanks() {
+        List<RecommendationResult> all = engine.getRecommendations("", 0, 2000, "All Categories", 10);
+        List<RecommendationResult> top = engine.getRecommendations("", 0, 2000, "All Categories", 2);
+
+        assertEquals(2, top.size());
+        for (int i = 0; i < top.size(); i++) {
+            assertEquals(all.get(i).getProductId(), top.get(i).getProductId());
+            assertEquals(i + 1, top.get(i).getRank());
+        }
+        assertTrue(engine.getRecommendations("", 0, 2000, "All Categories", 0).isEmpty());
+    }
+
+    @Test
+    public void testQueryCacheReturnsIndependentCopies() {
+        List<RecommendationResult> first = engine.getRecommendations("Samsung", 0, 2000, "All Categories", 5);
+        first.get(0).setRank(99); // Callers re-rank results after sorting
+
+        List<RecommendationResult> second = engine.getRecommendations("samsung", 0, 2000, "All Categories", 5);
+
+        assertEquals(1, engine.getQueryCache().getHits());
+        assertEquals(first.size(), second.size());
+        assertEquals("p1", second.get(0).getProductId());
+        assertEquals(1, second.get(0).getRank());
+    }
+
+    @Test
+    public void testQueryCacheKeyIsAnalyzedQuery() {
+        engine.getRecommendations("Samsung Galaxy", 0, 2000, "All Categories", 5);
+        engine.getRecommendations("  SÂMSUNG   galaxy! ", 0, 2000, "All Categories", 5);
+        assertEquals(1, engine.getQueryCache().getHits());
+
+        // Same normalized text, other tokens: scored differently, so not shared
+        engine.getRecommendations("Samsung-Galaxy", 0, 2000, "All Categories", 5);
+        engine.getRecommendations("SamsungGalaxy", 0, 2000, "All Categories", 5);
+        assertEquals(1, engine.getQueryCache().getHits());
+    }
+
+    @Test
+    public void testParallelScoringMatchesSequential() {
+        List<RecommendationResult> sequential = engine.getRecommendations("", 0, 2000, "All Categories", 10);
+
+        RecommendationEngine parallel = new RecommendationEngine(mockProducts);
+        parallel.setParallelism(3);
+        parallel.setParallelCutoff(0);
+        List<RecommendationResult> results = parallel.getRecommendations("", 0, 2000, "All Categories", 10);
+
+        assertEquals(sequential.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(sequential.get(i).getProductId(), results.get(i).getProductId());
+            assertEquals(sequential.get(i).getScore(), results.get(i).getScore(), 1e-12);
+        }
+
+        // A new pool after resizing
+        parallel.setParallelism(2);
+        parallel.getQueryCache().invalidate();
+        assertEquals(sequential.size(), parallel.getRecommendations("", 0, 2000, "All Categories", 10).size());
+        assertThrows(IllegalArgumentException.class, () -> parallel.setParallelCutoff(-1));
+    }
+
+    @Test
+    public void testBatchMatchesSingleQueries() {
+        List<Query> queries = Arrays.asList(
+                new Query("Samsung", 0, 2000, "All Categories", 5),
+                new Query("Laptop", 0, 1000, "Laptops", 5),
+                new Query("Samsung", 0, 2000, "All Categories", 5),
+                new Query("Samsung", 0, 2000, "Unknown Category", 5));
+
+        RecommendationEngine batchEngine = new RecommendationEngine(mockProducts);
+        batchEngine.setParallelism(2);
+        List<List<RecommendationResult>> batch = batchEngine.getRecommendationsBatch(queries);
+
+        assertEquals(queries.size(), batch.size());
+        for (int q = 0; q < queries.size(); q++) {
+            Query query = queries.get(q);
+            List<RecommendationResult> single = engine.getRecommendations(query.getText(), query.getMinPrice(),
+                    query.getMaxPrice(), query.getCategory(), query.getMaxResults());
+            assertEquals(single.size(), batch.get(q).size());
+            for (int i = 0; i < single.size(); i++) {
+                assertEquals(single.get(i).getProductId(), batch.get(q).get(i).getProductId());
+                assertEquals(single.get(i).getScore(), batch.get(q).get(i).getScore(), 1e-12);
+            }
+        }
+        assertNotSame(batch.get(0), batch.get(2)); // Duplicates get their own copies
+        assertTrue(batch.get(3).isEmpty());
+    }
+
+    @Test
+    public void testIncrementalUpdatesMatchFullRetrain() {
+        Product laptop = new Product("p4", "Samsung Galaxy Book", 900.0, "link4", "img4", "Laptop Samsung",
+                "Laptops");
+        Product cheaperIphone = new Product("p2", "iPhone 15 Pro", 999.0, "link2", "img2", "Apple Phone",
+                "Smartphones");
+
+        engine.addProduct(laptop);
+        assertTrue(engine.updateProduct(cheaperIphone));
+        assertTrue(engine.removeProduct("p3"));
+        assertFalse(engine.removeProduct("missing"));
+        engine.reweight();
+
+        RecommendationEngine retrained = new RecommendationEngine(
+                Arrays.asList(mockProducts.get(0), cheaperIphone, laptop));
+        assertEquals(3, engine.getTotalProducts());
+        for (String query : new String[] { "Samsung", "iPhone", "Laptop", "" }) {
+            List<RecommendationResult> expected = retrained.getRecommendations(query, 0, 2000, "All Categories", 5);
+            List<RecommendationResult> results = engine.getRecommendations(query, 0, 2000, "All Categories", 5);
+            assertEquals(expected.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expected.get(i).getProductId(), results.get(i).getProductId());
+                assertEquals(expected.get(i).getScore(), results.get(i).getScore(), 1e-9);
+            }
+        }
+        assertEquals(0.0, engine.getIdfDrift(), 1e-12);
+    }
+
+    @Test
+    public void testFirstProductOfEmptyEngine() {
+        RecommendationEngine empty = new RecommendationEngine(List.of());
+        assertTrue(empty.getAutocompleteIndex().complete("gal", 5).isEmpty());
+        assertEquals(0.0, empty.getPriceRange()[1], 0.001);
+
+        empty.addProduct(mockProducts.get(0));
+        assertEquals(800.0, empty.getPriceRange()[0], 0.001);
+        assertEquals(800.0, empty.getPriceRange()[1], 0.001);
+        assertEquals(List.of("Samsung Galaxy S23"), empty.getAutocompleteIndex().complete("gal", 5));
+        assertEquals("p1", empty.getRecommendations("Samsung", 0, 2000, "All Categories", 5).get(0).getProductId());
+    }
+
+    @Test
+    public void testSnapshotRoundTrip(@TempDir File dir) throws IOException {
+        File file = new File(dir, "model.snapshot");
+        engine.saveSnapshot(file, "hash-1");
+
+        RecommendationEngine loaded = RecommendationEngine.loadSnapshot(file, "hash-1");
+        assertNotNull(loaded);
+        assertEquals(engine.getTotalProducts(), loaded.getTotalProducts());
+        for (String query : new String[] { "Samsung", "Laptop", "" }) {
+            List<RecommendationResult> expected = engine.getRecommendations(query, 0, 2000, "All Categories", 5);
+            List<RecommendationResult> results = loaded.getRecommendations(query, 0, 2000, "All Categories", 5);
+            assertEquals(expected.size(), results.size());
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals(expected.get(i).getProductId(), results.get(i).getProductId());
+                assertEquals(expected.get(i).getScore(), results.get(i).getScore(), 1e-12);
+            }
+        }
+
+        // Other source data or a corrupt file: caller must retrain
+        assertNull(RecommendationEngine.loadSnapshot(file, "hash-2"));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(raf.length() / 2);
+            int b = raf.read();
+            raf.seek(raf.length() / 2);
+            raf.write(b ^ 0xFF);
+        }
+        assertNull(RecommendationEngine.loadSnapshot(file, "hash-1"));
+        assertNull(RecommendationEngine.loadSnapshot(new File(dir, "missing"), "hash-1"));
+    }
+
+    @Test
+    public void testOffHeapVectorsMatchOnHeap(@TempDir File dir) {
+        RecommendationEngine direct = new RecommendationEngine(mockProducts);
+        direct.setOffHeapVectors(true, null);
+        RecommendationEngine mapped = new RecommendationEngine(mockProducts);
+        mapped.setIdfDriftThreshold(Double.MAX_VALUE); // No background reweight writing arenas into dir
+        mapped.setOffHeapVectors(true, dir);
+        mapped.addProduct(new Product("p4", "Samsung Galaxy Book", 900.0, "link4", "img4", "Laptop", "Laptops"));
+        mapped.removeProduct("p4");
+        assertEquals(1, dir.listFiles().length); // Replaced arenas delete their files
+
+        // Incremental changes patch the arena as on-heap postings are patched
+        for (RecommendationEngine e : Arrays.asList(engine, direct, mapped)) {
+            e.setIdfDriftThreshold(Double.MAX_VALUE);
+            e.addProduct(new Product("p5", "Lenovo Laptop", 700.0, "link5", "img5", "Laptop Lenovo", "Laptops"));
+            e.updateProduct(new Product("p2", "iPhone 15", 999.0, "link2", "img2", "Apple Samsung", "Smartphones"));
+            e.removeProduct("p1");
+            e.addProduct(new Product("p1", "Samsung Galaxy S23", 800.0, "link1", "img1", "Smartphone", "Smartphones"));
+        }
+        assertEquals(1, dir.listFiles().length);
+
+        assertTrue(direct.getOffHeapBytes() > 0);
+        assertTrue(mapped.getOffHeapBytes() > 0);
+        for (String query : new String[] { "Samsung", "Laptop", "Lenovo", "Apple", "" }) {
+            List<RecommendationResult> expected = engine.getRecommendations(query, 0, 2000, "All Categories", 5);
+            for (RecommendationEngine offHeap : Arrays.asList(direct, mapped)) {
+                List<RecommendationResult> results = offHeap.getRecommendations(query, 0, 2000, "All Categories", 5);
+                assertEquals(expected.size(), results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    assertEquals(expected.get(i).getProductId(), results.get(i).getProductId());
+                    assertEquals(expected.get(i).getScore(), results.get(i).getScore(), 1e-12);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQuantizedVectorsKeepRanking() {
+        List<Query> queries = Arrays.asList(
+                new Query("Samsung", 0, 2000, "All Categories", 5),
+                new Query("Apple Phone", 0, 2000, "Smartphones", 5),
+                new Query("Laptop", 0, 2000, "All Categories", 5));
+        RankOverlap check = engine.checkPrecision(VectorPrecision.INT8, queries, 3);
+        assertEquals(3, check.getQueryCount());
+        assertEquals(1.0, check.getMeanOverlap(), 1e-12);
+        assertTrue(check.getReducedPrecisionBytes() < check.getFullPrecisionBytes());
+
+        RecommendationEngine quantized = new RecommendationEngine(mockProducts);
+        quantized.setIdfDriftThreshold(Double.MAX_VALUE); // No background reweight between add and remove
+        for (VectorPrecision precision : VectorPrecision.values()) {
+            quantized.setVectorPrecision(precision);
+            quantized.addProduct(new Product("p4", "Samsung Galaxy Book", 900.0, "link4", "img4", "Laptop", "Laptops"));
+            quantized.removeProduct("p4");
+            for (Query q : queries) {
+                List<RecommendationResult> expected = engine.getRecommendations(q.getText(), q.getMinPrice(),
+                        q.getMaxPrice(), q.getCategory(), q.getMaxResults());
+                List<RecommendationResult> results = quantized.getRecommendations(q.getText(), q.getMinPrice(),
+                        q.getMaxPrice(), q.getCategory(), q.getMaxResults());
+                assertEquals(expected.size(), results.size());
+                for (int i = 0; i < results.size(); i++) {
+                    assertEquals(expected.get(i).getProductId(), results.get(i).getProductId());
+                    assertEquals(expected.get(i).getScore(), results.get(i).getScore(), 0.01);
+                }
+            }
+        }
+        assertThrows(IllegalStateException.class, () -> quantized.setOffHeapVectors(true, null));
+    }
 }
@@ -0,0 +1,99 @@
+package com.recommendation.test;
+
+import com.recommendation.model.QueryCache;
+import com.recommendation.model.RecommendationResult;
+import com.recommendation.model.ShardedRecommendationEngine;
+import com.recommendation.preprocessing.Product;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class ShardedRecommendationEngineTest {
+
+    private ShardedRecommendationEngine engine;
+
+    @BeforeEach
+    public void setUp() {
+        List<Product> products = Arrays.asList(
+                new Product("p1", "Samsung Galaxy S23", 800.0, "link1", "img1", "Smartphone", "Smartphones"),
+                new Product("p2", "iPhone 15 Pro", 1200.0, "link2", "img2", "Apple Phone", "Smartphones"),
+                new Product("p3", "Dell XPS 13", 1500.0, "link3", "img3", "Laptop", "Laptops"),
+                new Product("p4", "Samsung Galaxy Book", 900.0, "link4", "img4", "Laptop Samsung", "Laptops"));
+        engine = new ShardedRecommendationEngine(products, 2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    public void testOneShardPerCategory() {
+        assertEquals(2, engine.getShardCount());
+        assertEquals(2, engine.getCategoryStats().get("laptops"));
+    }
+
+    @Test
+    public void testQueryCacheBudgetIsSplit() {
+        long budget = QueryCache.DEFAULT_BUDGET_BYTES / 2;
+        assertEquals(budget, engine.getShard("Laptops").getQueryCache().getBudgetBytes());
+        assertEquals(budget, engine.getShard("Smartphones").getQueryCache().getBudgetBytes());
+
+        engine.setQueryCacheBudgetBytes(1000);
+        assertEquals(500, engine.getShard("Laptops").getQueryCache().getBudgetBytes());
+    }
+
+    @Test
+    public void testProductsWithoutCategory() {
+        try (ShardedRecommendationEngine uncategorized = new ShardedRecommendationEngine(Arrays.asList(
+                new Product("p1", "Samsung Galaxy S23", 800.0, "link1", "img1", "Smartphone", "Smartphones"),
+                new Product("p5", "Unknown Gadget", 100.0, "link5", "img5", "Gadget", null)), 1)) {
+            assertEquals(2, uncategorized.getShardCount());
+            assertEquals(1, uncategorized.getCategoryStats().size()); // Not a category
+            assertTrue(uncategorized.getRecommendations("Gadget", 0, 2000, "unknown", 5).isEmpty());
+            List<RecommendationResult> results = uncategorized.getRecommendations("Gadget", 0, 2000,
+                    "All Categories", 5);
+            assertEquals("p5", results.get(0).getProductId());
+        }
+    }
+
+    @Test
+    public void testCategoryQueryHitsSingleShard() {
+        List<RecommendationResult> results = engine.getRecommendations("Samsung", 0, 2000, "Laptops", 5);
+
+        assertFalse(results.isEmpty());
+        for (RecommendationResult r : results)
+            assertEquals("Laptops", r.getCategory());
+    }
+
+    @Test
+    public void testAllCategoriesMergesShards() {
+        List<RecommendationResult> results = engine.getRecommendations("Samsung", 0, 2000, "All Categories", 5);
+
+        assertEquals(2, results.size());
+        assertTrue(results.get(0).getScore() >= results.get(1).getScore());
+        assertEquals(1, results.get(0).getRank());
+        assertEquals(2, results.get(1).getRank());
+    }
+
+    @Test
+    public void testRetrainSingleShard() {
+        engine.retrainShard("Laptops", Arrays.asList(
+                new Product("p5", "Asus Zenbook", 700.0, "link5", "img5", "Laptop", "Laptops")));
+
+        assertEquals(1, engine.getCategoryStats().get("Laptops"));
+        assertEquals(2, engine.getCategoryStats().get("Smartphones"));
+        assertEquals(3, engine.getProductCount());
+
+        // Retraining from the catalogue keeps the replacement
+        engine.retrainShard("Laptops");
+        assertEquals(1, engine.getCategoryStats().get("Laptops"));
+        List<RecommendationResult> results = engine.getRecommendations("Asus", 0, 2000, "Laptops", 5);
+        assertEquals(1, results.size());
+        assertEquals("p5", results.get(0).getProductId());
+    }
+}
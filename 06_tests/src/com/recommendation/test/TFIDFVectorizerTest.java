@@ -1,6 +1,10 @@
 package com.recommendation.test;
 
+import com.recommendation.model.Analyzer;
+import com.recommendation.model.NaiveBayesClassifier;
+import com.recommendation.model.SparseVector;
 import com.recommendation.model.TFIDFVectorizer;
+import com.recommendation.model.TermStatistics;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.BeforeEach;
 import static org.junit.jupiter.api.Assertions.*;
@@ -39,13 +43,127 @@ public class TFIDFVectorizerTest {
         List<String> docs = Arrays.asList("apple banana cherry", "banana cherry date");
         vectorizer.fit(docs);
 
-        double[] vector = vectorizer.transform("apple banana");
+        SparseVector vector = vectorizer.transform("apple banana");
 
         assertNotNull(vector);
-        assertEquals(vectorizer.getVocabSize(), vector.length);
+        assertEquals(vectorizer.getVocabSize(), vector.getDimension());
+        // Only the query terms can be non-zero
+        assertTrue(vector.size() <= 2);
 
         // Verify that untrained transform throws exception
         TFIDFVectorizer untrained = new TFIDFVectorizer();
         assertThrows(IllegalStateException.class, () -> untrained.transform("test"));
     }
+
+    @Test
+    public void testSparseCosineSimilarity() {
+        List<String> docs = Arrays.asList("apple banana cherry", "banana cherry date", "kiwi mango");
+        vectorizer.fit(docs);
+
+        SparseVector v1 = vectorizer.transform("apple cherry");
+        SparseVector v2 = vectorizer.transform("apple cherry");
+        SparseVector v3 = vectorizer.transform("kiwi");
+
+        assertEquals(1.0, v1.cosineSimilarity(v2), 1e-9);
+        assertEquals(0.0, v1.cosineSimilarity(v3), 1e-9);
+        assertEquals(0.0, v1.cosineSimilarity(SparseVector.empty(v1.getDimension())), 1e-9);
+    }
+
+    @Test
+    public void testTermLookup() {
+        vectorizer.fit(Arrays.asList("Clavier MÉCANIQUE, rétroéclairé!", "clavier-sans-fil pour le bureau"));
+
+        // Lowercased, split on punctuation, short words and stop words dropped
+        assertTrue(vectorizer.termId("clavier") >= 0);
+        assertTrue(vectorizer.termId("mécanique") >= 0);
+        assertTrue(vectorizer.termId("rétroéclairé") >= 0);
+        assertTrue(vectorizer.termId("fil") >= 0);
+        assertEquals(-1, vectorizer.termId("sans"));
+        assertEquals(-1, vectorizer.termId("le"));
+        assertEquals(-1, vectorizer.termId("souris"));
+        assertEquals(vectorizer.termId("bureau"), vectorizer.termId(new StringBuilder("bureau")));
+
+        // Repeated words count towards TF: "clavier" twice out of three tokens
+        SparseVector vector = vectorizer.transform("clavier CLAVIER souris");
+        assertEquals(1, vector.size());
+        assertEquals(vectorizer.termId("clavier"), vector.indexAt(0));
+    }
+
+    @Test
+    public void testAccentFolding() {
+        vectorizer.fit(Arrays.asList("Écouteurs sans fil", "ecouteurs bluetooth", "Cœur"));
+
+        // Accented and plain spellings are one term
+        assertEquals(4, vectorizer.getVocabSize()); // ecouteurs, fil, bluetooth, coeur
+        assertEquals(vectorizer.termId("ecouteurs"), vectorizer.termId("ÉCOUTEURS"));
+        assertTrue(vectorizer.termId("coeur") >= 0);
+        assertEquals(List.of("ecouteurs", "fil"), Analyzer.get().tokens("écouteurs, sans fil"));
+
+        // Normalized text keeps every word for substring matching
+        assertEquals("clavier mecanique rgb 2", Analyzer.normalize("  Clavier  Mécanique RGB (2) "));
+    }
+
+    @Test
+    public void testMergedStatisticsMatchSinglePass() {
+        List<String> docs = Arrays.asList("apple banana cherry", "banana cherry date", "kiwi mango apple",
+                "date fig grape", "cherry grape kiwi");
+        vectorizer.fit(docs);
+
+        // Two "files" counted separately, merged in corpus order
+        TermStatistics first = new TermStatistics();
+        docs.subList(0, 2).forEach(first::add);
+        TermStatistics second = TermStatistics.of(docs.subList(2, docs.size()).iterator());
+        TFIDFVectorizer merged = new TFIDFVectorizer();
+        merged.fit(first.merge(second));
+
+        TFIDFVectorizer streamed = new TFIDFVectorizer();
+        streamed.fit(docs.stream());
+
+        assertEquals(5, first.getDocumentCount());
+        for (TFIDFVectorizer other : Arrays.asList(merged, streamed)) {
+            assertEquals(vectorizer.getVocabSize(), other.getVocabSize());
+            for (String term : new String[] { "apple", "cherry", "fig", "kiwi" })
+                assertEquals(vectorizer.termId(term), other.termId(term));
+            SparseVector expected = vectorizer.transform("cherry kiwi fig");
+            SparseVector actual = other.transform("cherry kiwi fig");
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                assertEquals(expected.indexAt(i), actual.indexAt(i));
+                assertEquals(expected.valueAt(i), actual.valueAt(i), 1e-12);
+            }
+        }
+    }
+
+    @Test
+    public void testFeatureHashing() {
+        TFIDFVectorizer hashing = new TFIDFVectorizer(10);
+        hashing.fit(Arrays.asList("apple banana cherry", "banana cherry date", "kiwi mango"));
+        assertEquals(1024, hashing.getVocabSize());
+
+        // Unseen words hash into the same fixed space
+        hashing.addDocument("papaya guava apple");
+        assertEquals(1024, hashing.getVocabSize());
+        SparseVector v = hashing.transform("apple guava");
+        assertEquals(1024, v.getDimension());
+        assertEquals(1.0, v.cosineSimilarity(hashing.transform("guava apple")), 1e-9);
+        assertTrue(v.get(hashing.termId("apple")) != 0.0);
+
+        assertThrows(IllegalArgumentException.class, () -> new TFIDFVectorizer(29));
+        assertThrows(IllegalArgumentException.class, () -> hashing.fit(new TermStatistics()));
+    }
+
+    @Test
+    public void testSentimentKeepsStopWords() {
+        // Stop words are dropped for relevance only
+        assertEquals(Arrays.asList("produit"), Analyzer.get().tokens("Très bon produit"));
+
+        NaiveBayesClassifier classifier = new NaiveBayesClassifier();
+        classifier.train("Très bon produit", true);
+        classifier.train("Bon rapport qualité prix", true);
+        classifier.train("Pas fiable", false);
+        classifier.train("Pas terrible, produit nul", false);
+        assertTrue(classifier.predict("bon") > 0);
+        assertTrue(classifier.predict("pas bon") < classifier.predict("bon"));
+        assertTrue(classifier.predict("pas") < 0);
+    }
 }